@@ -0,0 +1,193 @@
+package cop5555sp15;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import cop5555sp15.Parser.SyntaxException;
+import cop5555sp15.ast.Program;
+
+/**
+ * Scans and parses many sources at once. Each source is read, scanned
+ * lazily and parsed as one task on an executor. The results come back in the
+ * order of the sources.
+ *
+ * Two limits hold however many threads the executor has. At most
+ * concurrency sources are worked on at a time. The sources being worked on
+ * hold at most charBudget input chars together. A source larger than the
+ * whole budget is worked on alone. A file's size in bytes is taken as its
+ * length in chars, which is never too small for UTF-8. The budget bounds
+ * the input held by the work in flight only. A Result keeps the AST and
+ * syntax errors of its source, and through their tokens the whole input, so
+ * a batch holds all of its inputs once it is done.
+ */
+public final class BatchParser {
+
+	/** The outcome for one source */
+	public static final class Result {
+		public final String name; // the file name, or the index of a string source
+		public final Program program; // null if the source has syntax errors or could not be parsed
+		public final List<SyntaxException> syntaxErrors;
+		public final Diagnostics diagnostics; // scanning errors up to where parsing stopped, or null
+		public final IOException readError; // null unless the source could not be read
+		public final RuntimeException failure; // null unless the scanner or parser failed on the source
+
+		Result(String name, Program program, List<SyntaxException> syntaxErrors, Diagnostics diagnostics,
+				IOException readError, RuntimeException failure) {
+			this.name = name;
+			this.program = program;
+			this.syntaxErrors = syntaxErrors;
+			this.diagnostics = diagnostics;
+			this.readError = readError;
+			this.failure = failure;
+		}
+
+		Result(String name, IOException readError) {
+			this(name, null, Collections.<SyntaxException>emptyList(), null, readError, null);
+		}
+	}
+
+	private final ExecutorService executor; // null if each batch gets a pool of its own
+	private final int concurrency;
+	private final Semaphore running;
+	private final Semaphore budget; // permits are input chars
+	private final int charBudget;
+
+	/* uses a pool of its own with concurrency threads for each batch */
+	public BatchParser(int concurrency, int charBudget) {
+		this(null, concurrency, charBudget);
+	}
+
+	/*
+	 * runs the tasks on the given executor, which is not shut down. It may
+	 * have any number of threads, the limits are kept by this class.
+	 */
+	public BatchParser(ExecutorService executor, int concurrency, int charBudget) {
+		if (concurrency <= 0 || charBudget <= 0) {
+			throw new IllegalArgumentException("Concurrency and budget must be positive.");
+		}
+		this.executor = executor;
+		this.concurrency = concurrency;
+		this.running = new Semaphore(concurrency);
+		this.budget = new Semaphore(charBudget, true);
+		this.charBudget = charBudget;
+	}
+
+	/* one thread per core and a budget of 64M chars */
+	public BatchParser() {
+		this(Runtime.getRuntime().availableProcessors(), 1 << 26);
+	}
+
+	/** parses UTF-8 files */
+	public List<Result> parseFiles(List<Path> files) throws InterruptedException {
+		List<Callable<Result>> tasks = new ArrayList<Callable<Result>>(files.size());
+		for (final Path file : files) {
+			tasks.add(new Callable<Result>() {
+				public Result call() throws InterruptedException {
+					String name = file.toString();
+					long size;
+					try {
+						size = Files.size(file);
+					} catch (IOException e) {
+						return new Result(name, e);
+					}
+					int cost = acquire(size);
+					try {
+						return parse(name, TokenStream.fromFile(file));
+					} catch (IOException e) {
+						return new Result(name, e);
+					} finally {
+						release(cost);
+					}
+				}
+			});
+		}
+		return run(tasks);
+	}
+
+	/** parses sources given as strings. Result i is named "i". */
+	public List<Result> parseStrings(List<String> sources) throws InterruptedException {
+		List<Callable<Result>> tasks = new ArrayList<Callable<Result>>(sources.size());
+		for (int i = 0; i < sources.size(); i++) {
+			final String name = Integer.toString(i);
+			final String source = sources.get(i);
+			tasks.add(new Callable<Result>() {
+				public Result call() throws InterruptedException {
+					int cost = acquire(source.length());
+					try {
+						return parse(name, new TokenStream(source));
+					} finally {
+						release(cost);
+					}
+				}
+			});
+		}
+		return run(tasks);
+	}
+
+	// scans and parses one source. A failure of the scanner or parser, such as the
+	// NumberFormatException of an int literal that does not fit into an int, is returned
+	// in the Result so that it does not end the batch.
+	private Result parse(String name, TokenStream stream) {
+		try {
+			new Scanner(stream).scanLazily();
+			Parser parser = new Parser(stream);
+			Program program = parser.parse();
+			return new Result(name, program, parser.getExceptionList(), stream.diagnostics, null, null);
+		} catch (UncheckedIOException e) {
+			return new Result(name, null, Collections.<SyntaxException>emptyList(), stream.diagnostics,
+					e.getCause(), null);
+		} catch (RuntimeException e) {
+			return new Result(name, null, Collections.<SyntaxException>emptyList(), stream.diagnostics, null, e);
+		}
+	}
+
+	// waits for a free slot and for budget for length chars. Returns the budget taken.
+	private int acquire(long length) throws InterruptedException {
+		int cost = (int) Math.min(length, charBudget);
+		running.acquire();
+		try {
+			budget.acquire(cost);
+		} catch (InterruptedException e) {
+			running.release();
+			throw e;
+		}
+		return cost;
+	}
+
+	private void release(int cost) {
+		budget.release(cost);
+		running.release();
+	}
+
+	private List<Result> run(List<Callable<Result>> tasks) throws InterruptedException {
+		ExecutorService pool = executor != null ? executor : Executors.newFixedThreadPool(concurrency);
+		try {
+			List<Future<Result>> futures = pool.invokeAll(tasks);
+			List<Result> results = new ArrayList<Result>(futures.size());
+			for (Future<Result> future : futures) {
+				try {
+					results.add(future.get());
+				} catch (ExecutionException e) {
+					// an Error, such as running out of memory, that parse does not catch
+					throw new IllegalStateException("Parsing failed", e.getCause());
+				}
+			}
+			return results;
+		} finally {
+			if (pool != executor) {
+				pool.shutdownNow();
+			}
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package cop5555sp15;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import cop5555sp15.TokenStream.Kind;
+
+/**
+ * Errors found by the scanner: illegal chars, unterminated string literals
+ * and comments, and integer literals that do not fit into an int. The scanner
+ * records each of them with its position and keeps going, so a single scan
+ * reports all the errors in the input. Nothing is recorded for correct input.
+ */
+public final class Diagnostics {
+
+	/** One error, at the offsets of the token it was found in */
+	public static final class Diagnostic {
+		public final Kind kind; // the error token kind, or INT_LIT for a literal that is too large
+		final int token; // index of the token in the stream
+		public final int beg;
+		public final int end;
+		public final int lineNumber;
+		public final int column;
+
+		Diagnostic(Kind kind, int token, int beg, int end, int lineNumber, int column) {
+			this.kind = kind;
+			this.token = token;
+			this.beg = beg;
+			this.end = end;
+			this.lineNumber = lineNumber;
+			this.column = column;
+		}
+
+		public String getMessage() {
+			switch (kind) {
+			case ILLEGAL_CHAR:
+				return "illegal char";
+			case UNTERMINATED_STRING:
+				return "unterminated string literal";
+			case UNTERMINATED_COMMENT:
+				return "unterminated comment";
+			default:
+				return "integer literal does not fit into an int";
+			}
+		}
+
+		public String toString() {
+			return "line " + lineNumber + " column " + column + ": " + getMessage();
+		}
+	}
+
+	private final List<Diagnostic> diagnostics = new ArrayList<Diagnostic>();
+
+	/* records an error. Errors at or before the token of the last one are ignored, as they are found again by a rescan. */
+	void add(Diagnostic d) {
+		int size = diagnostics.size();
+		if (size > 0 && d.token <= diagnostics.get(size - 1).token) {
+			return;
+		}
+		diagnostics.add(d);
+	}
+
+	/*
+	 * For TokenStream.edit: replaces the errors in the old tokens from index
+	 * from up to to by found, the errors in the tokens scanned in their place.
+	 * The errors in the tokens after them are moved by tokenShift tokens,
+	 * shift chars and lineShift lines, with their columns looked up again in
+	 * lines.
+	 */
+	void splice(int from, int to, List<Diagnostic> found, int tokenShift, int shift, int lineShift, LineIndex lines) {
+		int first = indexOfToken(from);
+		int last = indexOfToken(to);
+		for (int i = last; i < diagnostics.size(); i++) {
+			Diagnostic d = diagnostics.get(i);
+			int beg = d.beg + shift;
+			int column = lines.column(beg);
+			if (tokenShift != 0 || shift != 0 || lineShift != 0 || column != d.column) {
+				diagnostics.set(i, new Diagnostic(d.kind, d.token + tokenShift, beg, d.end + shift,
+						d.lineNumber + lineShift, column));
+			}
+		}
+		diagnostics.subList(first, last).clear();
+		diagnostics.addAll(first, found);
+	}
+
+	// returns the index of the first error in the token at index token or after it
+	private int indexOfToken(int token) {
+		int low = 0;
+		int high = diagnostics.size();
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (diagnostics.get(mid).token < token) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	void clear() {
+		diagnostics.clear();
+	}
+
+	/** returns the recorded errors in the order of their offsets */
+	public List<Diagnostic> all() {
+		return Collections.unmodifiableList(diagnostics);
+	}
+
+	public int size() {
+		return diagnostics.size();
+	}
+
+	public boolean isEmpty() {
+		return diagnostics.isEmpty();
+	}
+
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (Diagnostic d : diagnostics) {
+			sb.append(d).append('\n');
+		}
+		return sb.toString();
+	}
+}
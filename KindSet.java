@@ -0,0 +1,67 @@
+package cop5555sp15;
+
+import static cop5555sp15.TokenStream.Kind.*;
+
+import cop5555sp15.TokenStream.Kind;
+
+/**
+ * An immutable set of token kinds, kept as a bitmask over Kind.ordinal() so
+ * that testing a token against a first set costs a shift and an AND instead
+ * of a scan of an array. There are fewer than 64 kinds, so a long holds any
+ * set. The fixed sets of the grammar are here, shared by Parser and
+ * SimpleParser.
+ */
+final class KindSet {
+	private static final Kind[] KINDS = Kind.values();
+
+	static {
+		if (KINDS.length > Long.SIZE) {
+			throw new IllegalStateException("KindSet holds at most " + Long.SIZE + " kinds, there are " + KINDS.length);
+		}
+	}
+
+	static final KindSet REL_OPS = of(BAR, AND, EQUAL, NOTEQUAL, LT, GT, LE, GE);
+	static final KindSet WEAK_OPS = of(PLUS, MINUS);
+	static final KindSet STRONG_OPS = of(TIMES, DIV);
+	static final KindSet VERY_STRONG_OPS = of(LSHIFT, RSHIFT);
+	static final KindSet SIMPLE_TYPES = of(KW_INT, KW_BOOLEAN, KW_STRING);
+	static final KindSet FACTOR_FIRST = of(IDENT, INT_LIT, BL_TRUE, BL_FALSE, STRING_LIT, LPAREN,
+										   NOT, MINUS, KW_SIZE, KW_KEY, KW_VALUE, LCURLY, AT);
+	static final KindSet STATEMENT_FIRST = of(IDENT, KW_PRINT, KW_WHILE, LPAREN, KW_IF, MOD, KW_RETURN);
+
+	private final long bits;
+
+	private KindSet(long bits) {
+		this.bits = bits;
+	}
+
+	static KindSet of(Kind... kinds) {
+		long bits = 0;
+		for (Kind kind : kinds) {
+			bits |= 1L << kind.ordinal();
+		}
+		return new KindSet(bits);
+	}
+
+	boolean contains(Kind kind) {
+		return (bits & (1L << kind.ordinal())) != 0;
+	}
+
+	/* returns the kinds in the set in the order of their ordinals, for error messages */
+	Kind[] toArray() {
+		Kind[] kinds = new Kind[Long.bitCount(bits)];
+		int n = 0;
+		for (long rest = bits; rest != 0; rest &= rest - 1) {
+			kinds[n++] = KINDS[Long.numberOfTrailingZeros(rest)];
+		}
+		return kinds;
+	}
+
+	public String toString() {
+		StringBuilder sb = new StringBuilder("{");
+		for (Kind kind : toArray()) {
+			sb.append(sb.length() > 1 ? ", " : "").append(kind);
+		}
+		return sb.append('}').toString();
+	}
+}
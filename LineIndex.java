@@ -0,0 +1,80 @@
+package cop5555sp15;
+
+import java.util.Arrays;
+
+/**
+ * Offsets at which the lines of the input begin, recorded by the scanner as
+ * it counts line breaks. Lines are numbered the way the scanner numbers them
+ * in Token.lineNumber, so a line break inside a comment or a string literal
+ * does not begin a new line. Any offset is mapped to its line and column by a
+ * binary search over the line starts.
+ */
+public final class LineIndex {
+	private int[] starts; // starts[i] is the offset of line i + 1
+	private int size;
+
+	LineIndex() {
+		this(0);
+	}
+
+	// an index whose first line begins at offset firstLineStart
+	LineIndex(int firstLineStart) {
+		starts = new int[16];
+		starts[0] = firstLineStart;
+		size = 1;
+	}
+
+	/* records that a line begins at offset start. Starts that are already known are ignored. */
+	void add(int start) {
+		if (start <= starts[size - 1]) {
+			return;
+		}
+		if (size == starts.length) {
+			starts = Arrays.copyOf(starts, size * 2);
+		}
+		starts[size++] = start;
+	}
+
+	/* forgets all lines but the first, which begins at offset 0 */
+	void clear() {
+		starts[0] = 0;
+		size = 1;
+	}
+
+	/* forgets the lines that begin after offset and returns their starts */
+	int[] truncate(int offset) {
+		int keep = lineOf(offset);
+		int[] removed = Arrays.copyOfRange(starts, keep, size);
+		size = keep;
+		return removed;
+	}
+
+	/** returns the line number, counting from 1, of the char at offset */
+	public int line(int offset) {
+		return lineOf(offset);
+	}
+
+	/** returns the column, counting from 1, of the char at offset */
+	public int column(int offset) {
+		return offset - starts[lineOf(offset) - 1] + 1;
+	}
+
+	/** returns the offset at which the given line begins */
+	public int lineStart(int line) {
+		if (line < 1 || line > size) {
+			throw new IndexOutOfBoundsException("No line " + line);
+		}
+		return starts[line - 1];
+	}
+
+	/** returns the number of lines recorded so far */
+	public int lineCount() {
+		return size;
+	}
+
+	// returns the number of line starts at or before offset, which is the line of offset
+	private int lineOf(int offset) {
+		int i = Arrays.binarySearch(starts, 0, size, offset);
+		return i >= 0 ? i + 1 : -i - 1;
+	}
+}
@@ -0,0 +1,67 @@
+package cop5555sp15;
+
+import cop5555sp15.TokenStream.Token;
+
+/**
+ * A window of the next few tokens of a TokenStream, kept in a ring buffer.
+ * peek(k) looks k tokens ahead of the current one without consuming
+ * anything. Tokens are taken from the stream only as far as they are looked
+ * at and are dropped once consumed, so with a lazily scanned stream the
+ * tokens in memory are bounded by the size of the window. Once the EOF
+ * token has been reached it is returned for every position after it.
+ */
+final class Lookahead {
+	private final TokenStream stream;
+	private final Token[] ring;
+	private final int mask;
+	private int head; // ring index of the current token
+	private int count; // tokens in the ring, from head on
+	private Token eof; // the EOF token once it has been taken from the stream
+	private int next; // index of the next token to take from a scanned stream, or -1 to take it from nextToken
+
+	/* a window of at least capacity tokens, rounded up to a power of two */
+	Lookahead(TokenStream stream, int capacity) {
+		this(stream, capacity, -1);
+	}
+
+	/*
+	 * a window that starts at the token at index from of a scanned stream and
+	 * leaves the position of the stream alone, so several can read it at once
+	 */
+	Lookahead(TokenStream stream, int capacity, int from) {
+		int size = Integer.highestOneBit(Math.max(capacity, 1) * 2 - 1);
+		this.stream = stream;
+		this.ring = new Token[size];
+		this.mask = size - 1;
+		this.next = from;
+	}
+
+	/* returns the token k positions after the current one, where peek(0) is the current token */
+	Token peek(int k) {
+		if (k < 0 || k >= ring.length) {
+			throw new IndexOutOfBoundsException("Lookahead of " + k + " tokens, only " + ring.length + " are kept");
+		}
+		while (count <= k) {
+			if (eof != null) {
+				return eof;
+			}
+			Token token = next < 0 ? stream.nextToken() : stream.tokenAt(next++);
+			if (token.kind == TokenStream.Kind.EOF) {
+				eof = token;
+			}
+			ring[(head + count) & mask] = token;
+			count++;
+		}
+		return ring[(head + k) & mask];
+	}
+
+	/* moves past the current token, unless it is EOF */
+	void consume() {
+		if (peek(0) == eof) {
+			return;
+		}
+		ring[head] = null;
+		head = (head + 1) & mask;
+		count--;
+	}
+}
@@ -0,0 +1,72 @@
+package cop5555sp15;
+
+import java.util.Arrays;
+
+import cop5555sp15.TokenStream.Kind;
+
+/**
+ * Holds scanned tokens as parallel primitive arrays instead of one Token
+ * object per token. The i-th token is described by kinds[i], begs[i] and
+ * ends[i]. Its line number is not stored but looked up in the LineIndex that
+ * the scanner filled in. The arrays grow by doubling as tokens are added.
+ */
+final class PackedTokens {
+	private static final Kind[] KINDS = Kind.values();
+
+	private byte[] kinds; // Kind ordinals
+	private int[] begs;
+	private int[] ends;
+	private final LineIndex lines;
+	private int size;
+
+	PackedTokens(int capacity, LineIndex lines) {
+		capacity = Math.max(capacity, 16);
+		kinds = new byte[capacity];
+		begs = new int[capacity];
+		ends = new int[capacity];
+		this.lines = lines;
+		size = 0;
+	}
+
+	void add(Kind kind, int beg, int end) {
+		if (size == kinds.length) {
+			int capacity = size * 2;
+			kinds = Arrays.copyOf(kinds, capacity);
+			begs = Arrays.copyOf(begs, capacity);
+			ends = Arrays.copyOf(ends, capacity);
+		}
+		kinds[size] = (byte) kind.ordinal();
+		begs[size] = beg;
+		ends[size] = end;
+		size++;
+	}
+
+	void clear() {
+		size = 0;
+	}
+
+	int size() {
+		return size;
+	}
+
+	Kind kind(int i) {
+		return KINDS[kinds[i]];
+	}
+
+	int beg(int i) {
+		return begs[i];
+	}
+
+	int end(int i) {
+		return ends[i];
+	}
+
+	int line(int i) {
+		return lines.line(begs[i]);
+	}
+
+	/* returns the index of the token that begins at offset beg, or a negative number if there is none */
+	int indexOfBeg(int beg) {
+		return Arrays.binarySearch(begs, 0, size, beg);
+	}
+}
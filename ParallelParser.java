@@ -0,0 +1,113 @@
+package cop5555sp15;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import cop5555sp15.ast.BlockElem;
+
+/**
+ * Parses the declarations and statements of a class block in chunks on a
+ * fork-join pool, for Parser.parseParallel.
+ *
+ * A pre-pass over the token kinds finds where each of them ends, at a ;
+ * outside of any braces, and where the block ends, at the } that matches its
+ * {. The block is cut at those points into chunks of at least grain tokens.
+ * Each chunk is parsed by a Parser of its own that starts at its first token,
+ * and the elements of the chunks are joined in order. A declaration or
+ * statement never has a ; outside of braces, so for correct input this gives
+ * the elements parse would. If a chunk has a syntax error or does not end
+ * where the pre-pass cut it, parse returns null.
+ */
+final class ParallelParser {
+	static final int DEFAULT_GRAIN = 1 << 14;
+
+	private final TokenStream stream;
+	private final ForkJoinPool pool;
+	private final int grain;
+	int close = -1; // index of the } of the block once parse has found it
+
+	ParallelParser(TokenStream stream, ForkJoinPool pool, int grain) {
+		this.stream = stream;
+		this.pool = pool;
+		this.grain = grain;
+	}
+
+	// The elements parsed from the token at beg up to the token at end
+	private class Chunk extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final int beg;
+		final int end;
+		List<BlockElem> elems; // null if the chunk could not be parsed by itself
+
+		Chunk(int beg, int end) {
+			this.beg = beg;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			elems = new Parser(stream, beg).BlockElems(stream.tokenAt(end));
+		}
+	}
+
+	/*
+	 * returns the elements of the block whose contents begin at the token at
+	 * from, or null if they could not be parsed chunk by chunk
+	 */
+	List<BlockElem> parse(int from) {
+		final List<Chunk> chunks = new ArrayList<>();
+		int count = stream.tokenCount();
+		int depth = 0;
+		int beg = from;
+		for (int i = from; i < count && close < 0; i++) {
+			switch (stream.kindAt(i)) {
+			case LCURLY:
+				depth++;
+				break;
+			case RCURLY:
+				if (depth == 0) {
+					close = i;
+				}
+				depth--;
+				break;
+			case SEMICOLON:
+				if (depth == 0 && i + 1 - beg >= grain) {
+					chunks.add(new Chunk(beg, i + 1));
+					beg = i + 1;
+				}
+				break;
+			case IDENT:
+				stream.tokenAt(i).getSymbol(); // interned here, the symbol table is not thread safe
+				break;
+			default:
+				break;
+			}
+		}
+		if (close < 0) {
+			return null;
+		}
+		if (beg < close) {
+			chunks.add(new Chunk(beg, close));
+		}
+		pool.invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				invokeAll(chunks);
+			}
+		});
+
+		List<BlockElem> elems = new ArrayList<>();
+		for (Chunk chunk : chunks) {
+			if (chunk.elems == null) {
+				return null;
+			}
+			elems.addAll(chunk.elems);
+		}
+		return elems;
+	}
+}
@@ -0,0 +1,158 @@
+package cop5555sp15;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import cop5555sp15.TokenStream.Kind;
+
+/**
+ * Scans a large input in chunks on a fork-join pool and stitches the results
+ * into the tokens list of the stream, exactly as Scanner.scan would fill it.
+ *
+ * Each chunk starts right after a line break and is scanned as if the input
+ * began there, on line 1. A chunk stops at the first token that begins at or
+ * after the start of the next chunk. The chunks are then joined in order. The
+ * scanner always starts a token from the same state, so once the position
+ * reached by the tokens joined so far is the beginning of a token in the next
+ * chunk, that chunk's tokens from there on are exactly the sequential ones
+ * with their line numbers shifted by a constant. A chunk start that is really
+ * inside a string literal or a comment never lines up like that. Such a chunk
+ * is scanned again sequentially from the joined position until the two
+ * agree on a token beginning, or until the chunk is passed.
+ */
+final class ParallelScanner {
+	static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+	private final Scanner scanner;
+	private final TokenStream stream;
+	private final char[] inputChars;
+	private final ForkJoinPool pool;
+	private final int chunkSize;
+
+	ParallelScanner(Scanner scanner, TokenStream stream, ForkJoinPool pool, int chunkSize) {
+		this.scanner = scanner;
+		this.stream = stream;
+		this.inputChars = stream.inputChars;
+		this.pool = pool;
+		this.chunkSize = chunkSize;
+	}
+
+	// The tokens of one chunk, with lines counted from 1 at the chunk start
+	private class Chunk extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final int beg;
+		final int limit; // beginning of the next chunk
+		final LineIndex lines; // line starts in this chunk, with line 1 at beg
+		final PackedTokens tokens;
+		int nextBeg = -1; // first token at or after limit, not included in tokens
+		int nextLine;
+
+		Chunk(int beg, int limit) {
+			this.beg = beg;
+			this.limit = limit;
+			this.lines = new LineIndex(beg);
+			this.tokens = new PackedTokens((Math.min(limit, inputChars.length) - beg) / 4, lines);
+		}
+
+		@Override
+		protected void compute() {
+			ScanEngine engine = scanner.newEngine(lines);
+			engine.restartAt(beg, 1);
+			Kind kind = engine.scanNext();
+			while (kind != null) {
+				if (engine.tokenBeg() >= limit) {
+					nextBeg = engine.tokenBeg();
+					nextLine = engine.tokenLine();
+					return;
+				}
+				tokens.add(kind, engine.tokenBeg(), engine.tokenEnd());
+				kind = engine.scanNext();
+			}
+		}
+	}
+
+	void scan() {
+		List<Chunk> chunks = new ArrayList<>();
+		int beg = 0;
+		while (beg < inputChars.length) {
+			int limit = nextChunkStart(beg + chunkSize);
+			chunks.add(new Chunk(beg, limit < inputChars.length ? limit : Integer.MAX_VALUE));
+			beg = limit;
+		}
+		pool.invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				invokeAll(chunks);
+			}
+		});
+
+		Chunk first = chunks.get(0);
+		append(first, 0, 0, 0);
+		int pos = first.nextBeg;
+		int line = first.nextLine;
+		ScanEngine engine = null;
+		for (int k = 1; k < chunks.size() && pos >= 0; k++) {
+			Chunk chunk = chunks.get(k);
+			if (pos >= chunk.limit) {
+				continue; // covered by a token that began in an earlier chunk
+			}
+			int i = chunk.tokens.indexOfBeg(pos);
+			if (i < 0) {
+				if (engine == null) {
+					engine = scanner.newEngine(stream.lines);
+				}
+				engine.restartAt(pos, line);
+				Kind kind = engine.scanNext();
+				while (kind != null) {
+					pos = engine.tokenBeg();
+					line = engine.tokenLine();
+					i = chunk.tokens.indexOfBeg(pos);
+					if (i >= 0 || pos >= chunk.limit) {
+						break;
+					}
+					stream.tokens.add(stream.new Token(kind, pos, engine.tokenEnd(), line));
+					kind = engine.scanNext();
+				}
+				if (kind == null) {
+					return;
+				}
+				if (i < 0) {
+					continue; // passed this chunk without lining up
+				}
+			}
+			int delta = line - chunk.tokens.line(i);
+			append(chunk, i, delta, pos);
+			pos = chunk.nextBeg;
+			line = chunk.nextLine + delta;
+		}
+	}
+
+	// returns the offset just after the first line break at or after offset, or the input length
+	private int nextChunkStart(int offset) {
+		for (int i = offset; i < inputChars.length; i++) {
+			if (inputChars[i] == '\n') {
+				return i + 1;
+			}
+		}
+		return inputChars.length;
+	}
+
+	// adds the tokens of chunk from index from on to the stream, shifting their lines by delta,
+	// together with the line starts the chunk found after offset pos
+	private void append(Chunk chunk, int from, int delta, int pos) {
+		PackedTokens tokens = chunk.tokens;
+		for (int line = chunk.lines.line(pos) + 1; line <= chunk.lines.lineCount(); line++) {
+			stream.lines.add(chunk.lines.lineStart(line));
+		}
+		stream.tokens.ensureCapacity(stream.tokens.size() + tokens.size() - from);
+		for (int i = from; i < tokens.size(); i++) {
+			stream.tokens.add(stream.new Token(tokens.kind(i), tokens.beg(i), tokens.end(i),
+					tokens.line(i) + delta));
+		}
+	}
+}
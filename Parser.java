@@ -5,6 +5,7 @@ import static cop5555sp15.TokenStream.Kind.*;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import cop5555sp15.TokenStream.Kind;
 import cop5555sp15.TokenStream.Token;
@@ -12,6 +13,7 @@ import cop5555sp15.ast.*;
 
 public class Parser {
 
+	/* created without a stack trace, as the parser creates one for every error it recovers from */
 	@SuppressWarnings("serial")
 	public class SyntaxException extends Exception {
 		Token t;
@@ -19,6 +21,7 @@ public class Parser {
 		String msg;
 
 		SyntaxException(Token t, Kind expected) {
+			super(null, null, false, false);
 			this.t = t;
 			msg = "";
 			this.expected = new Kind[1];
@@ -27,11 +30,13 @@ public class Parser {
 		}
 
 		public SyntaxException(Token t, String msg) {
+			super(null, null, false, false);
 			this.t = t;
 			this.msg = msg;
 		}
 
 		public SyntaxException(Token t, Kind[] expected) {
+			super(null, null, false, false);
 			this.t = t;
 			msg = "";
 			this.expected = expected;
@@ -39,25 +44,74 @@ public class Parser {
 
 		public String getMessage() {
 			StringBuilder sb = new StringBuilder();
-			sb.append(" error at token ").append(t.toString()).append(" ")
-					.append(msg);
-			sb.append(". Expected: ");
-			for (Kind kind : expected) {
-				sb.append(kind).append(" ");
+			sb.append(" error at token ").append(t.toString()).append(" column ")
+					.append(t.getColumn()).append(" ").append(msg);
+			if (expected != null) {
+				sb.append(". Expected: ");
+				for (Kind kind : expected) {
+					sb.append(kind).append(" ");
+				}
 			}
 			return sb.toString();
 		}
 	}
 	
+	// Number of tokens the parser can look ahead, including the current one
+	static final int LOOKAHEAD = 4;
+
 	private List<SyntaxException> exceptionList = new ArrayList<>();
-	private TokenStream tokens;
-	private Token t;
+	private Program partialProgram;
+	private final TokenStream stream;
+	private Lookahead tokens; // tokens.peek(k) looks ahead up to LOOKAHEAD - 1 tokens
+	private Token t; // the current token, tokens.peek(0)
 	private Token consumedToken;
 
+	// For reparse: the class block of the last parse, and the list that the blocks and
+	// closures being parsed are added to. Only kept by an incremental parser.
+	private final boolean incremental;
+	private Container root;
+	private List<Container> containers;
+
+	/* a block or closure of the last parse, kept for reparse */
+	private static final class Container {
+		final Token head; // the { of a block or the -> of a closure, which its statements follow
+		final Token close; // the } that closes it
+		final List<BlockElem> elems; // its statements in the AST, and in a block its declarations
+		final List<Token> starts; // the first token of each of elems, which a VarDec does not keep
+		final boolean declarations;
+		final List<Container> inner; // the blocks and closures in its statements that are not in another one, in order
+
+		Container(Token head, Token close, List<BlockElem> elems, List<Token> starts, boolean declarations,
+				List<Container> inner) {
+			this.head = head;
+			this.close = close;
+			this.elems = elems;
+			this.starts = starts;
+			this.declarations = declarations;
+			this.inner = inner;
+		}
+	}
+
 	Parser(TokenStream tokens) {
-		this.tokens = tokens;
-		t = tokens.nextToken();
+		this(tokens, false);
+	}
+
+	/* an incremental parser keeps what reparse needs to take over the unchanged parts of the AST */
+	Parser(TokenStream tokens, boolean incremental) {
+		this.stream = tokens;
+		this.tokens = new Lookahead(tokens, LOOKAHEAD);
+		t = this.tokens.peek(0);
 		consumedToken = null;
+		this.incremental = incremental;
+	}
+
+	/* a parser that starts at the token at index from of a scanned stream, for ParallelParser */
+	Parser(TokenStream tokens, int from) {
+		this.stream = tokens;
+		this.tokens = new Lookahead(tokens, LOOKAHEAD, from);
+		t = this.tokens.peek(0);
+		consumedToken = null;
+		this.incremental = false;
 	}
 
 	private Kind match(Kind kind) throws SyntaxException {
@@ -68,17 +122,13 @@ public class Parser {
 		throw new SyntaxException(t, kind);
 	}
 
-	private Kind match(Kind... kinds) throws SyntaxException {
+	private Kind match(KindSet kinds) throws SyntaxException {
 		Kind kind = t.kind;
-		if (isKind(kinds)) {
+		if (kinds.contains(kind)) {
 			consume();
 			return kind;
 		}
-		StringBuilder sb = new StringBuilder();
-		for (Kind kind1 : kinds) {
-			sb.append(kind1).append(kind1).append(" ");
-		}
-		throw new SyntaxException(t, "expected one of " + sb.toString());
+		throw new SyntaxException(t, kinds.toArray());
 	}
 
 	private boolean isKind(Kind kind) {
@@ -88,46 +138,76 @@ public class Parser {
 	private void consume() {
 		if (t.kind != EOF) {
 			consumedToken = t;
-			t = tokens.nextToken();
+			tokens.consume();
+			t = tokens.peek(0);
 		}
 	}
 
-	private boolean isKind(Kind... kinds) {
-		for (Kind kind : kinds) {
-			if (t.kind == kind)
-				return true;
-		}
-		return false;
+	private boolean isKind(KindSet kinds) {
+		return kinds.contains(t.kind);
 	}
 
-	//This is a convenient way to represent fixed sets of
-	//token kinds.  You can pass these to isKind.
-	static final Kind[] REL_OPS = { BAR, AND, EQUAL, NOTEQUAL, LT, GT, LE, GE };
-	static final Kind[] WEAK_OPS = { PLUS, MINUS };
-	static final Kind[] STRONG_OPS = { TIMES, DIV };
-	static final Kind[] VERY_STRONG_OPS = { LSHIFT, RSHIFT };
-	static final Kind[] SimpleTypes = { KW_INT, KW_BOOLEAN, KW_STRING };
+	//Fixed sets of token kinds, shared with the other parser.
+	//You can pass these to isKind and match.
+	static final KindSet REL_OPS = KindSet.REL_OPS;
+	static final KindSet WEAK_OPS = KindSet.WEAK_OPS;
+	static final KindSet STRONG_OPS = KindSet.STRONG_OPS;
+	static final KindSet VERY_STRONG_OPS = KindSet.VERY_STRONG_OPS;
+	// Binding strength of each binary operator by Kind ordinal, 0 for kinds that are not one.
+	// Operators of each set above bind more tightly than those of the one before.
+	static final int[] PRECEDENCE = new int[Kind.values().length];
+	static {
+		KindSet[] levels = { REL_OPS, WEAK_OPS, STRONG_OPS, VERY_STRONG_OPS };
+		for (int level = 0; level < levels.length; level++) {
+			for (Kind kind : levels[level].toArray()) {
+				PRECEDENCE[kind.ordinal()] = level + 1;
+			}
+		}
+	}
+	static final KindSet SimpleTypes = KindSet.SIMPLE_TYPES;
 	
-	static final Kind[] FactorFirstSet = { IDENT, INT_LIT, BL_TRUE, BL_FALSE, STRING_LIT, LPAREN,
-										   NOT, MINUS, Kind.KW_SIZE, Kind.KW_KEY, Kind.KW_VALUE, LCURLY, AT };
-	static final Kind[] StatementFirstSet = { IDENT, Kind.KW_PRINT, Kind.KW_WHILE, LPAREN, Kind.KW_IF,
-											  MOD, Kind.KW_RETURN};
+	static final KindSet FactorFirstSet = KindSet.FACTOR_FIRST;
+	static final KindSet StatementFirstSet = KindSet.STATEMENT_FIRST;
+	// Where parsing goes on after an error in a statement or declaration: the tokens
+	// that end one and those that can only begin one. IDENT and LPAREN also begin
+	// statements, but stopping at them inside an expression would report the rest
+	// of the expression as more errors.
+	static final KindSet SyncSet = KindSet.of(SEMICOLON, RCURLY, EOF, KW_DEF, Kind.KW_PRINT, Kind.KW_WHILE,
+											  Kind.KW_IF, MOD, Kind.KW_RETURN);
 
 
 	public List<SyntaxException> getExceptionList() {
 		return exceptionList;
 	}
+
+	/**
+	 * returns the AST built by parse even if there were syntax errors. Each
+	 * statement or declaration with an error is an ErrorStatement in it. It
+	 * is null if an error was found outside of the class block or the class
+	 * block is not closed.
+	 */
+	public Program getPartialProgram() {
+		return partialProgram;
+	}
 	
+	/*
+	 * returns the AST, or null if there were syntax errors. Parsing goes on
+	 * after an error in a statement or declaration, so getExceptionList holds
+	 * all of them.
+	 */
 	public Program parse() {
 		Program p = null;
+		if (incremental) {
+			containers = new ArrayList<>();
+		}
 		try {
 			p = Program();
-			if (p != null) {
-				match(EOF);
-			}
+			match(EOF);
 		} catch (SyntaxException e) {
-			exceptionList.add(e);
+			addError(e);
 		}
+		partialProgram = p;
+		root = incremental && p != null ? containers.get(0) : null;
 		if (exceptionList.isEmpty()) {
 			return p;
 		} else {
@@ -135,6 +215,301 @@ public class Parser {
 		}
 	}
 
+	/**
+	 * Applies an edit to the token stream, see TokenStream.edit, and returns
+	 * the AST of the edited input like parse. Only the statements around the
+	 * edit in the innermost block or closure that contains it are parsed
+	 * again. The other statements and declarations of the last parse, with
+	 * their blocks and closures, stay in the AST as they are, so the work
+	 * depends on the size of the edit and that block rather than on the size
+	 * of the input. The whole input is parsed again if the edit is outside of
+	 * the class block or changes which } closes a block. Only for a parser
+	 * made to be incremental, on tokens filled in by Scanner.scan.
+	 */
+	public Program reparse(int offset, int deletedLength, String insertedText) {
+		if (!incremental) {
+			throw new IllegalStateException("Only an incremental parser can reparse.");
+		}
+		stream.edit(offset, deletedLength, insertedText);
+		if (stream.editedFrom == stream.editedTo && stream.editedRemoved == 0) {
+			// only whitespace or comments changed, every token is still there
+		} else if (root == null || !reparseIn(innermost(root))) {
+			exceptionList = new ArrayList<>();
+			seek(0);
+			parse();
+		}
+		return exceptionList.isEmpty() ? partialProgram : null;
+	}
+
+	// returns the innermost block or closure that contains the tokens rescanned by the
+	// last edit among its statements, or null if the class block c does not
+	private Container innermost(Container c) {
+		if (!encloses(c)) {
+			return null;
+		}
+		while (true) {
+			int i = countBefore(c.inner, stream.editedFrom, false) - 1;
+			if (i < 0 || !encloses(c.inner.get(i))) {
+				return c;
+			}
+			c = c.inner.get(i);
+		}
+	}
+
+	private boolean encloses(Container c) {
+		int head = stream.indexOf(c.head);
+		return head >= 0 && head < stream.editedFrom && stream.indexOf(c.close) >= stream.editedTo;
+	}
+
+	// returns how many of the containers, from the first on, have heads before the token
+	// at index. Heads that were rescanned count as before it if rescannedBefore is set.
+	private int countBefore(List<Container> list, int index, boolean rescannedBefore) {
+		int low = 0;
+		int high = list.size();
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			int head = stream.indexOf(list.get(mid).head);
+			if (head < 0 ? rescannedBefore : head < index) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/*
+	 * Parses the statements of c from the last one before the edit on, until
+	 * the } of c or the first token of an old statement after the edit, and
+	 * puts them in place of the old ones. An old statement whose first token
+	 * has an old error is parsed again as well, since that error may have been
+	 * found by the statement before it, which hid its own error there. The blocks and closures inside them
+	 * and the errors found in them are replaced as well. Returns false, with
+	 * c left as it was, if parsing went past the } of c.
+	 */
+	private boolean reparseIn(Container c) {
+		if (c == null) {
+			return false;
+		}
+		List<BlockElem> elems = c.elems;
+		List<Token> starts = c.starts;
+		int close = stream.indexOf(c.close);
+		// the first statement that reaches the edit, and the token to start parsing at
+		int low = 0;
+		int high = elems.size();
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			int next = stream.indexOf(mid + 1 < starts.size() ? starts.get(mid + 1) : c.close);
+			if (next >= 0 && next < stream.editedFrom) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		int first = low;
+		int begin = first == 0 ? stream.indexOf(c.head) + 1 : stream.indexOf(starts.get(first));
+
+		List<SyntaxException> outerErrors = exceptionList;
+		List<Container> outerContainers = containers;
+		exceptionList = new ArrayList<>();
+		containers = new ArrayList<>();
+		List<BlockElem> parsed = new ArrayList<>();
+		List<Token> parsedStarts = new ArrayList<>();
+		seek(begin);
+		int next = first; // the next old statement that parsing may get back in step with
+		int end;
+		while (true) {
+			int at = stream.indexOf(t);
+			if (at == close) {
+				next = elems.size();
+				end = close;
+				break;
+			}
+			if (at > close || t.kind == RCURLY || t.kind == EOF) {
+				exceptionList = outerErrors;
+				containers = outerContainers;
+				return false;
+			}
+			while (next < starts.size() && stream.indexOf(starts.get(next)) < at) {
+				next++;
+			}
+			if (next < starts.size() && starts.get(next) == t && at >= stream.editedTo
+					&& !hasErrorAt(outerErrors, t)) {
+				end = at;
+				break;
+			}
+			Token elemToken = t;
+			BlockElem elem = BlockElem(c.declarations);
+			if (elem != null) {
+				parsed.add(elem);
+				parsedStarts.add(elemToken);
+			}
+		}
+
+		// The old errors from where parsing began up to where it stopped were found by the
+		// statements parsed again, and are dropped. The exception is an error at the token
+		// where parsing began that the statement before it, which was not parsed again,
+		// found. There is no old error at the first token of the statement where parsing
+		// stopped. An error at a token where one statement ends and the next one begins is
+		// kept once, as by addError.
+		List<SyntaxException> regionErrors = exceptionList;
+		exceptionList = new ArrayList<>();
+		boolean added = false;
+		for (SyntaxException e : outerErrors) {
+			int at = stream.indexOf(e.t);
+			if (at < 0 || (at >= begin && at <= end
+					&& !(at == begin && first > 0 && isErrorAt(elems.get(first - 1), e.t)))) {
+				continue;
+			}
+			if (at > end && !added) {
+				for (SyntaxException regionError : regionErrors) {
+					addError(regionError);
+				}
+				added = true;
+			}
+			addError(e);
+		}
+		if (!added) {
+			for (SyntaxException regionError : regionErrors) {
+				addError(regionError);
+			}
+		}
+
+		elems.subList(first, next).clear();
+		elems.addAll(first, parsed);
+		starts.subList(first, next).clear();
+		starts.addAll(first, parsedStarts);
+		int innerFirst = countBefore(c.inner, begin, false);
+		int innerEnd = countBefore(c.inner, end, true);
+		c.inner.subList(innerFirst, innerEnd).clear();
+		c.inner.addAll(innerFirst, containers);
+		containers = outerContainers;
+		return true;
+	}
+
+	private static boolean hasErrorAt(List<SyntaxException> errors, Token errorToken) {
+		for (SyntaxException e : errors) {
+			if (e.t == errorToken) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isErrorAt(BlockElem elem, Token errorToken) {
+		return elem instanceof ErrorStatement && ((ErrorStatement) elem).errorToken == errorToken;
+	}
+
+	// moves the parser to the token at index in the tokens list
+	private void seek(int index) {
+		tokens = new Lookahead(stream, LOOKAHEAD, index);
+		t = tokens.peek(0);
+		consumedToken = null;
+	}
+
+	/**
+	 * Parses like parse, but the declarations and statements of the class
+	 * block are parsed in parallel on the common fork-join pool. See
+	 * ParallelParser.
+	 */
+	public Program parseParallel() {
+		return parseParallel(ForkJoinPool.commonPool(), ParallelParser.DEFAULT_GRAIN);
+	}
+
+	/*
+	 * parses chunks of about grain tokens of the class block on the pool.
+	 * Input with syntax errors is parsed again sequentially, so the errors are
+	 * those parse reports. Tokens that are not in the tokens list of
+	 * Scanner.scan or scanParallel, and an incremental parser, are parsed
+	 * sequentially.
+	 */
+	public Program parseParallel(ForkJoinPool pool, int grain) {
+		if (grain <= 0) {
+			throw new IllegalArgumentException("Grain must be positive.");
+		}
+		if (incremental || stream.tokens.isEmpty()) {
+			return parse();
+		}
+		Program p = null;
+		try {
+			Token firstToken = t;
+			List<QualifiedName> imports = ImportList();
+			match(KW_CLASS);
+			match(IDENT);
+			String className = consumedToken.getText();
+			Token blockToken = t;
+			match(LCURLY);
+			ParallelParser parallel = new ParallelParser(stream, pool, grain);
+			List<BlockElem> blockElems = parallel.parse(stream.indexOf(t));
+			if (blockElems != null) {
+				seek(parallel.close);
+				match(RCURLY);
+				match(EOF);
+				p = new Program(firstToken, imports, className, new Block(blockToken, blockElems));
+			}
+		} catch (SyntaxException e) {
+			p = null; // found again below
+		}
+		if (p == null) {
+			seek(0);
+			exceptionList = new ArrayList<>();
+			return parse();
+		}
+		partialProgram = p;
+		return p;
+	}
+
+	/*
+	 * Parses the declarations and statements of a block from the current
+	 * token up to stop, for ParallelParser. Returns null after a syntax error
+	 * or if they do not end at stop.
+	 */
+	List<BlockElem> BlockElems(Token stop) {
+		List<BlockElem> blockElems = new ArrayList<>();
+		while (t != stop) {
+			if (t.kind == RCURLY || t.kind == EOF) {
+				return null;
+			}
+			BlockElem elem = BlockElem(true);
+			if (!exceptionList.isEmpty()) {
+				return null;
+			}
+			if (elem != null) {
+				blockElems.add(elem);
+			}
+		}
+		return blockElems;
+	}
+
+	// records an error unless it was found at the same token as the last one, which
+	// happens when an error at EOF is passed up through unclosed blocks
+	private void addError(SyntaxException e) {
+		if (exceptionList.isEmpty() || exceptionList.get(exceptionList.size() - 1).t != e.t) {
+			exceptionList.add(e);
+		}
+	}
+
+	/*
+	 * Records the error e in the statement or declaration beginning at
+	 * firstToken and skips to where parsing can go on: past the next ;, or to
+	 * the next other token of SyncSet. If the error was found at firstToken,
+	 * for example at a def in a closure, that token is skipped first so that
+	 * parsing always moves on.
+	 */
+	private ErrorStatement recover(Token firstToken, SyntaxException e) {
+		addError(e);
+		if (t == firstToken) {
+			consume();
+		}
+		while (!isKind(SyncSet)) {
+			consume();
+		}
+		if (t.kind == SEMICOLON) {
+			consume();
+		}
+		return new ErrorStatement(firstToken, e.t);
+	}
+
 	private Program Program() throws SyntaxException {
 		Token firstToken = t;
 		List<QualifiedName> imports = ImportList();
@@ -177,27 +552,67 @@ public class Parser {
 	}
 
 	private Block Block() throws SyntaxException {
-		List<BlockElem> blockElems = new LinkedList<>();
+		List<BlockElem> blockElems = new ArrayList<>();
 		Token firstToken = t;
 		match(LCURLY);
-		while (true) {
-			if (t.kind == Kind.KW_DEF) {
-				blockElems.add(Declaration());
-				match(SEMICOLON);
-			} else if (t.kind == RCURLY){
-				break;
-			} else {
-				Statement statement = Statement();
-				if (statement != null) {
-					blockElems.add(statement);
+		List<Container> outer = enterContainer();
+		List<Token> starts = outer == null ? null : new ArrayList<Token>();
+		while (t.kind != RCURLY && t.kind != EOF) {
+			Token elemToken = t;
+			BlockElem elem = BlockElem(true);
+			if (elem != null) {
+				blockElems.add(elem);
+				if (starts != null) {
+					starts.add(elemToken);
 				}
-				match(SEMICOLON);
 			}
 		}
 		match(RCURLY);
+		exitContainer(outer, firstToken, blockElems, starts, true);
 		return new Block(firstToken, blockElems);
 	}
 
+	/*
+	 * Parses a statement with its ;, or in a block also a declaration. Returns
+	 * null for an empty statement, and an ErrorStatement after a syntax error.
+	 */
+	private BlockElem BlockElem(boolean declarations) {
+		Token elemToken = t;
+		List<Container> outer = containers;
+		int mark = outer == null ? 0 : outer.size();
+		try {
+			BlockElem elem = declarations && t.kind == Kind.KW_DEF ? Declaration() : Statement();
+			match(SEMICOLON);
+			return elem;
+		} catch (SyntaxException e) {
+			if (outer != null) {
+				// forget the blocks and closures of the statement, it is not in the AST
+				containers = outer;
+				outer.subList(mark, outer.size()).clear();
+			}
+			return recover(elemToken, e);
+		}
+	}
+
+	// starts a list for the blocks and closures inside the one being parsed. Returns the
+	// list of the enclosing one, or null if the parser is not incremental.
+	private List<Container> enterContainer() {
+		List<Container> outer = containers;
+		if (outer != null) {
+			containers = new ArrayList<>();
+		}
+		return outer;
+	}
+
+	// adds the block or closure that was just closed to the list of the enclosing one
+	private void exitContainer(List<Container> outer, Token head, List<BlockElem> elems, List<Token> starts,
+			boolean declarations) {
+		if (outer != null) {
+			outer.add(new Container(head, consumedToken, elems, starts, declarations, containers));
+			containers = outer;
+		}
+	}
+
 	private Declaration Declaration() throws SyntaxException {
 		Token firstToken = t;
 		match(KW_DEF);
@@ -221,12 +636,24 @@ public class Parser {
 		match(LCURLY);
 		List<VarDec> formalArgList = FormalArgList();
 		match(ARROW);
-		List<Statement> statementList = new LinkedList<>();
-		while (t.kind != RCURLY) {
-			statementList.add(Statement());
-			match(SEMICOLON);
+		Token arrowToken = consumedToken;
+		List<Statement> statementList = new ArrayList<>();
+		List<Container> outer = enterContainer();
+		List<Token> starts = outer == null ? null : new ArrayList<Token>();
+		while (t.kind != RCURLY && t.kind != EOF) {
+			Token statementToken = t;
+			Statement statement = (Statement) BlockElem(false);
+			if (statement != null) {
+				statementList.add(statement);
+				if (starts != null) {
+					starts.add(statementToken);
+				}
+			}
 		}
 		match(RCURLY);
+		@SuppressWarnings("unchecked") // reparse only puts statements into it
+		List<BlockElem> elems = (List<BlockElem>) (List<?>) statementList;
+		exitContainer(outer, arrowToken, elems, starts, false);
 		return new Closure(firstToken, formalArgList, statementList);
 	}
 	
@@ -375,30 +802,11 @@ public class Parser {
 	}
 	
 	private Expression Expression(final boolean transferFromRangeExpr, final boolean allowTransferToRangeExpr) throws SyntaxException {
-		Expression leftTerm = Term();
-		Token relOp = null;
-		Expression rightTerm = null;
-		while (true) {
-			if (isKind(REL_OPS)) {
-				relOp = RelOp();
-				rightTerm = Term();
-				leftTerm = new BinaryExpression(leftTerm.firstToken, leftTerm, relOp, rightTerm);
-				relOp = null;
-				rightTerm = null;
-			} else {
-				break;
-			}
-		}
+		Expression expression = OperatorExpression(1);
 		if (!transferFromRangeExpr && allowTransferToRangeExpr && t.kind == RANGE) {
-			if (relOp == null && rightTerm == null) {
-				return RangeExpression(leftTerm);
-			}
-			return RangeExpression(new BinaryExpression(leftTerm.firstToken, leftTerm, relOp, rightTerm));
-		}
-		if (relOp == null && rightTerm == null) {
-			return leftTerm;
+			return RangeExpression(expression);
 		}
-		return new BinaryExpression(leftTerm.firstToken, leftTerm, relOp, rightTerm);
+		return expression;
 	}
 	
 	private RangeExpression RangeExpression(Expression leftExpression) throws SyntaxException {
@@ -410,87 +818,21 @@ public class Parser {
 		return new RangeExpression(leftExpression.firstToken, leftExpression, rightExpression);
 	}
 	
-	private Token RelOp() throws SyntaxException {
-		match(REL_OPS);
-		return consumedToken;
-	}
-	
-	private Expression Term() throws SyntaxException {
-		Expression leftElem = Elem();
-		Token weakOp = null;
-		Expression rightElem = null;
-		while (true) {
-			if (isKind(WEAK_OPS)) {
-				weakOp = WeakOp();
-				rightElem = Elem();
-				leftElem = new BinaryExpression(leftElem.firstToken, leftElem, weakOp, rightElem);
-				weakOp = null;
-				rightElem = null;
-			} else {
-				break;
-			}
-		}
-		if (weakOp == null && rightElem == null) {
-			return leftElem;
-		}
-		return new BinaryExpression(leftElem.firstToken, leftElem, weakOp, rightElem);
-	}
-	
-	private Token WeakOp() throws SyntaxException {
-		match(WEAK_OPS);
-		return consumedToken;
-	}
-	
-	private Expression Elem() throws SyntaxException {
-		Expression leftThing = Thing();
-		Token strongOp = null;
-		Expression rightThing = null;
-		while (true) {
-			if (isKind(STRONG_OPS)) {
-				strongOp = StrongOp();
-				rightThing = Thing();
-				leftThing = new BinaryExpression(leftThing.firstToken, leftThing, strongOp, rightThing);
-				strongOp = null;
-				rightThing = null;
-			} else {
-				break;
-			}
-		}
-		if (strongOp == null && rightThing == null) {
-			return leftThing;
-		}
-		return new BinaryExpression(leftThing.firstToken, leftThing, strongOp, rightThing);
- 	}
-	
-	private Token StrongOp() throws SyntaxException {
-		match(STRONG_OPS);
-		return consumedToken;
-	}
-	
-	private Expression Thing() throws SyntaxException {
-		Expression leftFactor = Factor();
-		Token op = null;
-		Expression rightFactor = null;
-		while (true) {
-			if (isKind(VERY_STRONG_OPS)) {
-				op = VeryStrongOp();
-				rightFactor = Factor();
-				leftFactor = new BinaryExpression(leftFactor.firstToken, leftFactor, op, rightFactor);
-				op = null;
-				rightFactor = null;
-			} else {
-				break;
-			}
-		}
-		if (op == null && rightFactor == null) {
-			return leftFactor;
+	/*
+	 * Parses Factors joined by binary operators that bind at least as tightly
+	 * as minPrecedence. An operator's right operand takes only operators that
+	 * bind more tightly, which makes each level left associative.
+	 */
+	private Expression OperatorExpression(int minPrecedence) throws SyntaxException {
+		Expression left = Factor();
+		int precedence;
+		while ((precedence = PRECEDENCE[t.kind.ordinal()]) >= minPrecedence) {
+			consume();
+			Token op = consumedToken;
+			Expression right = OperatorExpression(precedence + 1);
+			left = new BinaryExpression(left.firstToken, left, op, right);
 		}
-		return new BinaryExpression(leftFactor.firstToken, leftFactor, op, rightFactor);
-	}
-	
-	private Token VeryStrongOp() throws SyntaxException {
-		match(VERY_STRONG_OPS);
-		return consumedToken;
+		return left;
 	}
 	
 	private Expression Factor() throws SyntaxException {
@@ -0,0 +1,106 @@
+package cop5555sp15;
+
+import java.util.Random;
+
+/**
+ * Measures the parsing throughput of Parser, sequential and parallel, and of
+ * SimpleParser on a generated program that is mostly long expressions, where
+ * most of the time goes into testing tokens against operator and first sets.
+ * Run with
+ *
+ *     java cop5555sp15.ParserBenchmark [statements]
+ *
+ * The input is scanned once. Each parser then parses it several times to warm
+ * up, and the best of the timed rounds is reported in millions of tokens per
+ * second.
+ */
+public class ParserBenchmark {
+	private static final int WARMUP_ROUNDS = 5;
+	private static final int ROUNDS = 10;
+
+	public static void main(String[] args) throws Exception {
+		int statements = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		TokenStream stream = new TokenStream(program(statements));
+		new Scanner(stream).scan();
+		int tokens = stream.tokenCount();
+
+		long best = Long.MAX_VALUE;
+		for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+			stream.reset();
+			long start = System.nanoTime();
+			if (new Parser(stream).parse() == null) {
+				throw new IllegalStateException("The generated program has syntax errors");
+			}
+			long time = System.nanoTime() - start;
+			if (round >= WARMUP_ROUNDS) {
+				best = Math.min(best, time);
+			}
+		}
+		report("Parser", tokens, best);
+
+		best = Long.MAX_VALUE;
+		for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+			stream.reset();
+			long start = System.nanoTime();
+			if (new Parser(stream).parseParallel() == null) {
+				throw new IllegalStateException("The generated program has syntax errors");
+			}
+			long time = System.nanoTime() - start;
+			if (round >= WARMUP_ROUNDS) {
+				best = Math.min(best, time);
+			}
+		}
+		report("Parser ||", tokens, best);
+
+		best = Long.MAX_VALUE;
+		for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+			stream.reset();
+			long start = System.nanoTime();
+			new SimpleParser(stream).parse();
+			long time = System.nanoTime() - start;
+			if (round >= WARMUP_ROUNDS) {
+				best = Math.min(best, time);
+			}
+		}
+		report("SimpleParser", tokens, best);
+	}
+
+	private static void report(String name, int tokens, long time) {
+		System.out.printf("%-14s %9d tokens %8.2f Mtokens/s%n", name, tokens, tokens * 1e3 / time);
+	}
+
+	// assignments and print statements of random expressions of up to 5 levels of nesting
+	private static String program(int statements) {
+		Random random = new Random(3);
+		StringBuilder sb = new StringBuilder("class A {\n");
+		for (int i = 0; i < statements; i++) {
+			sb.append(random.nextBoolean() ? "\tx = " : "\tprint ");
+			expression(sb, random, 5);
+			sb.append(";\n");
+		}
+		return sb.append("}\n").toString();
+	}
+
+	private static final String[] OPERATORS = { "|", "&", "==", "!=", "<", ">", "<=", ">=", "+", "-", "*", "/",
+			"<<", ">>" };
+	private static final String[] FACTORS = { "x", "y", "count", "42", "7", "true", "\"s\"", "a[i]",
+			"size(list)", "-x", "!done" };
+
+	private static void expression(StringBuilder sb, Random random, int depth) {
+		factor(sb, random, depth);
+		for (int n = random.nextInt(4); n > 0; n--) {
+			sb.append(' ').append(OPERATORS[random.nextInt(OPERATORS.length)]).append(' ');
+			factor(sb, random, depth);
+		}
+	}
+
+	private static void factor(StringBuilder sb, Random random, int depth) {
+		if (depth > 0 && random.nextInt(4) == 0) {
+			sb.append('(');
+			expression(sb, random, depth - 1);
+			sb.append(')');
+		} else {
+			sb.append(FACTORS[random.nextInt(FACTORS.length)]);
+		}
+	}
+}
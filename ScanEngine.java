@@ -0,0 +1,30 @@
+package cop5555sp15;
+
+import cop5555sp15.TokenStream.Kind;
+
+/**
+ * The tokenizing core behind a Scanner. An engine reads the input chars of a
+ * TokenStream and recognizes one token per call to scanNext without creating
+ * Token objects. All engines must produce exactly the same tokens.
+ */
+interface ScanEngine {
+
+	/**
+	 * Scans the next token and returns its kind. Its position is then available
+	 * through tokenBeg, tokenEnd and tokenLine. Returns null once the EOF token
+	 * has been returned.
+	 */
+	Kind scanNext();
+
+	int tokenBeg();
+
+	int tokenEnd();
+
+	int tokenLine();
+
+	/*
+	 * moves the engine to the given offset, which must be a point where a token
+	 * may begin, and continues counting lines from lineNum
+	 */
+	void restartAt(int index, int lineNum);
+}
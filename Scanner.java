@@ -1,14 +1,19 @@
 package cop5555sp15;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.Map;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ForkJoinPool;
 
 import cop5555sp15.TokenStream.Token;
 import static cop5555sp15.TokenStream.Kind.*;
 
-public class Scanner {
+public class Scanner implements ScanEngine {
+	
+	// Selects the engine that recognizes the tokens. Both produce identical tokens.
+	public enum Engine {
+		STATE_MACHINE,	// the hand written state machine in this class
+		TABLE			// the table driven TableScanner
+	}
 	
 	private enum State {
 		START, 
@@ -31,66 +36,135 @@ public class Scanner {
 		GOT_INT_LIT, 
 		ILLEGAL_CHAR
 	}
+	// Marks the end of input for popNextChar and peekNextChar
+	private static final int EOI = -1;
+	// Classes of ASCII chars as bit flags in CHAR_FLAGS
+	private static final byte LETTER = 1;	// A-Z, a-z, $ and _
+	private static final byte DIGIT = 2;	// 0-9
+	private static final byte SPACE = 4;	// whitespace other than line breaks
+	private static final byte[] CHAR_FLAGS = new byte[128];
+	static {
+		for (char c = 0; c < 128; c++) {
+			if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || c == '$' || c == '_') {
+				CHAR_FLAGS[c] = LETTER;
+			} else if (c >= '0' && c <= '9') {
+				CHAR_FLAGS[c] = DIGIT;
+			} else if (Character.isWhitespace(c) && c != '\n' && c != '\r') {
+				CHAR_FLAGS[c] = SPACE;
+			}
+		}
+	}
+	// Chars read at once when all of the remaining streamed input is needed
+	private static final int BULK_READ = 1 << 16;
+	
 	private State state;
+	private ScanEngine engine;
+	private final Engine engineKind;
 	private final TokenStream inputStream;
-	private final char[] inputChars;
-	private final LinkedList<Character> inputCharList;
-	private int index;
+	private char[] inputChars;	// null for UTF-8 input, which a Utf8Scanner reads
+	private int inputLength;	// number of chars in inputChars that have been read
+	private final LineIndex lines;	// receives the offsets at which lines begin
+	private int index;	// cursor into inputChars, the next char to be read
 	private int lineNum;
 	private Token lastToken;
-	private final String[] keywords = {	"int", "string", "boolean", "import", "class", "def", "while",
-												"if", "else", "return", "print", "size", "key", "value"};
-	private final TokenStream.Kind[] keywordTokens = {KW_INT, KW_STRING, KW_BOOLEAN, KW_IMPORT, KW_CLASS,
-												KW_DEF, KW_WHILE, KW_IF, KW_ELSE, KW_RETURN, KW_PRINT,
-												KW_SIZE, KW_KEY, KW_VALUE};
-	private final Map<String, TokenStream.Kind> keywordMap;
+	private TokenStream.Kind lastKind;
+	private int tokenBeg;
+	private int tokenEnd;
+	private int tokenLine;
+	private int completeEnd;	// end of the last token known to be complete, for streamed input
+	private int completeLine;	// and its line
+	private int tokenIndex;	// index of the next token next() returns, counted from the beginning of the input
 
 	public Scanner(TokenStream stream) {
+		this(stream, Engine.STATE_MACHINE);
+	}
+	
+	public Scanner(TokenStream stream, Engine engine) {
+		this(stream, engine, stream.lines);
+	}
+	
+	Scanner(TokenStream stream, Engine engine, LineIndex lines) {
 		state = null;
 		inputStream = stream;
 		inputChars = inputStream.inputChars;
-		inputCharList = new LinkedList<>();
-		for (char c : inputChars) {
-			inputCharList.add(c);
-		}
+		inputLength = inputStream.inputLength();
+		this.lines = lines;
 		index = 0;
 		lineNum = 1;
+		completeEnd = 0;
+		completeLine = 1;
 		lastToken = null;
-		keywordMap = new HashMap<>();
-		if (keywords.length != keywordTokens.length) {
-			throw new IllegalArgumentException("Keywords array and KeywordTokens array length mismatch!");
+		lastKind = null;
+		this.engineKind = engine;
+		this.engine = selectEngine();
+	}
+
+	// Makes the scanner and its stream ready to scan new input, keeping the space they have
+	// allocated. See TokenStream.reset.
+	public void reset(char[] input) {
+		inputStream.reset(input);
+		refresh();
+		restartAt(0, 1);
+		tokenIndex = 0;
+	}
+	
+	// Returns the next token, or null after the EOF token. Error tokens are recorded in the
+	// stream's diagnostics. Throws an IOException only if streamed input cannot be read.
+	public Token next() throws IOException {
+		TokenStream.Kind kind = engine.scanNext();
+		while (kind != null && engine.tokenEnd() >= inputLength && !inputStream.isComplete()) {
+			// the token may go on in input that has not been read yet. Reading at least as
+			// much as is scanned again keeps the rescanning linear for long tokens.
+			inputStream.readMore(inputLength - completeEnd);
+			refresh();
+			lines.truncate(completeEnd);
+			restartAt(completeEnd, completeLine);
+			kind = engine.scanNext();
+		}
+		if (kind == null) {
+			return null;
 		}
-		for (int i = 0; i < keywords.length; i++) {
-			keywordMap.put(keywords[i], keywordTokens[i]);
+		completeEnd = engine.tokenEnd();
+		completeLine = engine.tokenLine();
+		lastToken = inputStream.new Token(kind, engine.tokenBeg(), engine.tokenEnd(), engine.tokenLine());
+		inputStream.diagnose(tokenIndex++, kind, lastToken.beg, lastToken.end, lastToken.lineNumber);
+		if (kind == TokenStream.Kind.IDENT) {
+			lastToken.symbol = inputStream.intern(lastToken.beg, lastToken.end);
 		}
+		return lastToken;
 	}
 	
-	public Token next() throws IOException, NumberFormatException {
-		if (lastToken != null && lastToken.kind == TokenStream.Kind.EOF) {
+	// Scans the next token with the state machine without allocating it. Returns its kind and
+	// leaves its position in tokenBeg, tokenEnd and tokenLine, or returns null once the EOF
+	// token has been scanned.
+	@Override
+	public TokenStream.Kind scanNext() {
+		if (lastKind == TokenStream.Kind.EOF) {
 			return null;
 		}
 		state = State.START;
-		Token t = null;
+		TokenStream.Kind kind = null;
 		int begOffset = index;
-		Character ch = popNextChar();
-		Character nextChar = null;
+		int ch = popNextChar();
+		int nextChar = EOI;
 		do {
-			if (ch == null) {
+			if (ch == EOI) {
 				if (state == State.START) {
-					t = inputStream.new Token(TokenStream.Kind.EOF, index, index, lineNum);
+					begOffset = index;
+					kind = TokenStream.Kind.EOF;
 					break;
 				} 
 				if (state == State.GOT_COMMENT){
-					t = inputStream.new Token(TokenStream.Kind.UNTERMINATED_COMMENT, begOffset, index, lineNum);
-					return t;
+					kind = TokenStream.Kind.UNTERMINATED_COMMENT;
+					break;
 				} 
 				if (state == State.GOT_STRING_ELE) {
-					t = inputStream.new Token(TokenStream.Kind.UNTERMINATED_STRING, begOffset, index, lineNum);
-					return t;
+					kind = TokenStream.Kind.UNTERMINATED_STRING;
+					break;
 				}
 				if (state == State.IDENT_PART) {
-					t = inputStream.new Token(TokenStream.Kind.IDENT, begOffset, index, lineNum);
-					return t;
+					kind = TokenStream.Kind.IDENT;
+					break;
 				}
 			}
 			switch (state) {
@@ -112,34 +186,34 @@ public class Scanner {
 					state = State.GOT_DOT;
 					break;
 				case ';':
-					t = inputStream.new Token(TokenStream.Kind.SEMICOLON, begOffset, index, lineNum);
+					kind = TokenStream.Kind.SEMICOLON;
 					break;
 				case ',':
-					t = inputStream.new Token(TokenStream.Kind.COMMA, begOffset, index, lineNum);
+					kind = TokenStream.Kind.COMMA;
 					break;
 				case '(':
-					t = inputStream.new Token(TokenStream.Kind.LPAREN, begOffset, index, lineNum);
+					kind = TokenStream.Kind.LPAREN;
 					break;
 				case ')':
-					t = inputStream.new Token(TokenStream.Kind.RPAREN, begOffset, index, lineNum);
+					kind = TokenStream.Kind.RPAREN;
 					break;
 				case '[':
-					t = inputStream.new Token(TokenStream.Kind.LSQUARE, begOffset, index, lineNum);
+					kind = TokenStream.Kind.LSQUARE;
 					break;
 				case ']':
-					t = inputStream.new Token(TokenStream.Kind.RSQUARE, begOffset, index, lineNum);
+					kind = TokenStream.Kind.RSQUARE;
 					break;
 				case '{':
-					t = inputStream.new Token(TokenStream.Kind.LCURLY, begOffset, index, lineNum);
+					kind = TokenStream.Kind.LCURLY;
 					break;
 				case '}':
-					t = inputStream.new Token(TokenStream.Kind.RCURLY, begOffset, index, lineNum);
+					kind = TokenStream.Kind.RCURLY;
 					break;
 				case ':':
-					t = inputStream.new Token(TokenStream.Kind.COLON, begOffset, index, lineNum);
+					kind = TokenStream.Kind.COLON;
 					break;
 				case '?':
-					t = inputStream.new Token(TokenStream.Kind.QUESTION, begOffset, index, lineNum);
+					kind = TokenStream.Kind.QUESTION;
 					break;
 					
 				// Operators
@@ -147,10 +221,10 @@ public class Scanner {
 					state = State.GOT_EQUALS;
 					break;
 				case '|':
-					t = inputStream.new Token(TokenStream.Kind.BAR, begOffset, index, lineNum);
+					kind = TokenStream.Kind.BAR;
 					break;
 				case '&':
-					t = inputStream.new Token(TokenStream.Kind.AND, begOffset, index, lineNum);
+					kind = TokenStream.Kind.AND;
 					break;
 				case '!':
 					state = State.GOT_EXCLAM;
@@ -162,19 +236,19 @@ public class Scanner {
 					state = State.GOT_GT;
 					break;
 				case '+':
-					t = inputStream.new Token(TokenStream.Kind.PLUS, begOffset, index, lineNum);
+					kind = TokenStream.Kind.PLUS;
 					break;
 				case '-':
 					state = State.GOT_MINUS;
 					break;
 				case '*':
-					t = inputStream.new Token(TokenStream.Kind.TIMES, begOffset, index, lineNum);
+					kind = TokenStream.Kind.TIMES;
 					break;
 				case '%':
-					t = inputStream.new Token(TokenStream.Kind.MOD, begOffset, index, lineNum);
+					kind = TokenStream.Kind.MOD;
 					break;
 				case '@':
-					t = inputStream.new Token(TokenStream.Kind.AT, begOffset, index, lineNum);
+					kind = TokenStream.Kind.AT;
 					break;
 				
 				// String literal
@@ -195,114 +269,116 @@ public class Scanner {
 					
 				// Letters, integers (except 0), whitespace (except new line and return)
 				default:
-					if ((ch >= 65 && ch <= 90) || (ch >= 97 && ch <= 122)) {
+					int flags = ch < 128 ? CHAR_FLAGS[ch] : 0;
+					if ((flags & LETTER) != 0) {
 						state = State.IDENT_PART;
-					} else if (ch >= 49 && ch <= 57) {
+					} else if ((flags & DIGIT) != 0) {
 						state = State.GOT_INT_LIT;
+					} else if (ch < 128 ? (flags & SPACE) != 0 : Character.isWhitespace(ch)) {
+						state = State.SPACE;
 					} else {
-						if (Character.isWhitespace(ch)) {
-							state = State.SPACE;
-						} else {
-							state = State.ILLEGAL_CHAR;
-						}
+						state = State.ILLEGAL_CHAR;
 					}
 				}
 				break;
 			case SPACE:
+				index = skipSpaces(index);
 				begOffset = index;
 				ch = popNextChar();
 				state = State.START;
 				break;
 			case LINE:
 				nextChar = peekNextChar();
-				if (ch == 13 && nextChar != null && nextChar == 10) {
+				if (ch == 13 && nextChar == 10) {
 					popNextChar();
 				}
 				begOffset = index;
 				ch = popNextChar();
 				lineNum++;
+				lines.add(begOffset);
 				state = State.START;
 				break;
 			case GOT_EQUALS:
 				nextChar = peekNextChar();
-				if (nextChar != null && nextChar == '=') {
+				if (nextChar == '=') {
 					popNextChar();
-					t = inputStream.new Token(TokenStream.Kind.EQUAL, begOffset, index, lineNum);
+					kind = TokenStream.Kind.EQUAL;
 				} else {
-					t = inputStream.new Token(TokenStream.Kind.ASSIGN, begOffset, index, lineNum);
+					kind = TokenStream.Kind.ASSIGN;
 				}
 				break;
 			case GOT_FORWARDSLASH:
 				nextChar = peekNextChar();
-				if (nextChar != null && nextChar == '*') {
+				if (nextChar == '*') {
 					popNextChar();
 					ch = popNextChar();
 					state = State.GOT_COMMENT;
 				} else {
-					t = inputStream.new Token(TokenStream.Kind.DIV, begOffset, index, lineNum);
+					kind = TokenStream.Kind.DIV;
 				}
 				break;
 			case GOT_DOT:
 				nextChar = peekNextChar();
-				if (nextChar != null && nextChar == '.') {
+				if (nextChar == '.') {
 					popNextChar();
-					t = inputStream.new Token(TokenStream.Kind.RANGE, begOffset, index, lineNum);
+					kind = TokenStream.Kind.RANGE;
 				} else {
-					t = inputStream.new Token(TokenStream.Kind.DOT, begOffset, index, lineNum);
+					kind = TokenStream.Kind.DOT;
 				}
 				break;
 			case GOT_EXCLAM:
 				nextChar = peekNextChar();
-				if (nextChar != null && nextChar == '=') {
+				if (nextChar == '=') {
 					popNextChar();
-					t = inputStream.new Token(TokenStream.Kind.NOTEQUAL, begOffset, index, lineNum);
+					kind = TokenStream.Kind.NOTEQUAL;
 				} else {
-					t = inputStream.new Token(TokenStream.Kind.NOT, begOffset, index, lineNum);
+					kind = TokenStream.Kind.NOT;
 				}
 				break;
 			case GOT_LT:
 				nextChar = peekNextChar();
-				if (nextChar != null && nextChar == '=') {
+				if (nextChar == '=') {
 					popNextChar();
-					t = inputStream.new Token(TokenStream.Kind.LE, begOffset, index, lineNum);
-				} else if (nextChar != null && nextChar == '<') {
+					kind = TokenStream.Kind.LE;
+				} else if (nextChar == '<') {
 					popNextChar();
-					t = inputStream.new Token(TokenStream.Kind.LSHIFT, begOffset, index, lineNum);
+					kind = TokenStream.Kind.LSHIFT;
 				} else {
-					t = inputStream.new Token(TokenStream.Kind.LT, begOffset, index, lineNum);
+					kind = TokenStream.Kind.LT;
 				}
 				break;
 			case GOT_GT:
 				nextChar = peekNextChar();
-				if (nextChar != null && nextChar == '=') {
+				if (nextChar == '=') {
 					popNextChar();
-					t = inputStream.new Token(TokenStream.Kind.GE, begOffset, index, lineNum);
-				} else if (nextChar != null && nextChar == '>') {
+					kind = TokenStream.Kind.GE;
+				} else if (nextChar == '>') {
 					popNextChar();
-					t = inputStream.new Token(TokenStream.Kind.RSHIFT, begOffset, index, lineNum);
+					kind = TokenStream.Kind.RSHIFT;
 				} else {
-					t = inputStream.new Token(TokenStream.Kind.GT, begOffset, index, lineNum);
+					kind = TokenStream.Kind.GT;
 				}
 				break;
 			case GOT_MINUS:
 				nextChar = peekNextChar();
-				if (nextChar != null && nextChar == '>') {
+				if (nextChar == '>') {
 					popNextChar();
-					t = inputStream.new Token(TokenStream.Kind.ARROW, begOffset, index, lineNum);
+					kind = TokenStream.Kind.ARROW;
 				} else {
-					t = inputStream.new Token(TokenStream.Kind.MINUS, begOffset, index, lineNum);
+					kind = TokenStream.Kind.MINUS;
 				}
 				break;
 			case GOT_COMMENT:
-				nextChar = peekNextChar();
-				if (ch == '*' && nextChar != null && nextChar == '/') {
-					popNextChar();
+				// ch is the char at index - 1. Jump to the end of the comment, or of the input.
+				int commentEnd = indexOfCommentEnd(index - 1);
+				if (commentEnd >= 0) {
+					index = commentEnd + 2;
 					begOffset = index;
 					ch = popNextChar();
 					state = State.START;
 				} else {
-					ch = popNextChar();
-					state = State.GOT_COMMENT;
+					index = inputLength;
+					ch = EOI;
 				}
 				break;
 			case GOT_STRING_LIT:
@@ -313,7 +389,7 @@ public class Scanner {
 				if (ch == '\\') {
 					state = State.GOT_STRING_ELE_ESC;
 				} else if (ch == '"'){
-					t = inputStream.new Token(TokenStream.Kind.STRING_LIT, begOffset, index, lineNum);
+					kind = TokenStream.Kind.STRING_LIT;
 					break;
 				} else {
 					ch = popNextChar();
@@ -322,7 +398,7 @@ public class Scanner {
 				break;
 			case GOT_STRING_ELE_ESC:
 				nextChar = peekNextChar();
-				if (nextChar != null && nextChar == '"') {
+				if (nextChar == '"') {
 					popNextChar();
 				} 
 				popNextChar();
@@ -331,7 +407,7 @@ public class Scanner {
 				break;
 			case GOT_ESC:
 				nextChar = peekNextChar();
-				if (nextChar != null && (nextChar == 'n' || nextChar == 'r' || nextChar == '"')) {
+				if (nextChar == 'n' || nextChar == 'r' || nextChar == '"') {
 					popNextChar();
 					ch = popNextChar();
 					state = State.GOT_STRING_ELE;
@@ -340,91 +416,327 @@ public class Scanner {
 				}
 				break;
 			case IDENT_PART:
-				nextChar = peekNextChar();
-				if (nextChar != null && ((nextChar >= 65 && nextChar <= 90) || (nextChar >= 97 && nextChar <= 122) || (nextChar == '$') || (nextChar == '_') || (nextChar >= 48 && nextChar <= 57))) {
-					ch = popNextChar();
-					state = State.IDENT_PART;
-				} else {
-					t = checkKeyword(inputStream.new Token(TokenStream.Kind.IDENT, begOffset, index, lineNum));
-				}
+				index = skip(index, LETTER | DIGIT);
+				kind = checkKeyword(inputChars, begOffset, index);
 				break;
 			case GOT_ZERO:
-				t = inputStream.new Token(TokenStream.Kind.INT_LIT, begOffset, index, lineNum);
+				kind = TokenStream.Kind.INT_LIT;
 				break;
 			case GOT_INT_LIT:
-				nextChar = peekNextChar();
-				if (nextChar != null && nextChar >= 48 && nextChar <= 57) {
-					ch = popNextChar();
-					state = State.GOT_INT_LIT;
-				} else {
-					t = inputStream.new Token(TokenStream.Kind.INT_LIT, begOffset, index, lineNum);
-				}
+				index = skip(index, DIGIT);
+				kind = TokenStream.Kind.INT_LIT;
 				break;
 			case ILLEGAL_CHAR:
-				t = inputStream.new Token(TokenStream.Kind.ILLEGAL_CHAR, begOffset, index, lineNum);
+				kind = TokenStream.Kind.ILLEGAL_CHAR;
 				break;
 			default:
 				throw new IllegalArgumentException("Unknown operation result.");
 			}
-		} while (t == null);
-		lastToken = t;
-		return t;
+		} while (kind == null);
+		lastKind = kind;
+		tokenBeg = begOffset;
+		tokenEnd = index;
+		tokenLine = lineNum;
+		return kind;
 	}
 	
-	private Token checkKeyword(final Token t) {
-		if (t.kind == TokenStream.Kind.IDENT) {
-			String tokenText = t.getText();
-			if (tokenText.equals("null")) {
-				return inputStream.new Token(TokenStream.Kind.NL_NULL, t.beg, t.end, t.lineNumber);
+	// Returns the kind of the identifier spelled by chars[beg..end), which is a keyword
+	// or literal kind for reserved words and IDENT otherwise. Candidates are picked by length
+	// and first char and compared in place, so no String is created.
+	static TokenStream.Kind checkKeyword(final char[] chars, final int beg, final int end) {
+		switch (end - beg) {
+		case 2:
+			return keyword(chars, beg, "if", TokenStream.Kind.KW_IF);
+		case 3:
+			switch (chars[beg]) {
+			case 'i':
+				return keyword(chars, beg, "int", TokenStream.Kind.KW_INT);
+			case 'd':
+				return keyword(chars, beg, "def", TokenStream.Kind.KW_DEF);
+			case 'k':
+				return keyword(chars, beg, "key", TokenStream.Kind.KW_KEY);
 			}
-			if (tokenText.equals("true")) {
-				return inputStream.new Token(TokenStream.Kind.BL_TRUE, t.beg, t.end, t.lineNumber);
+			break;
+		case 4:
+			switch (chars[beg]) {
+			case 'n':
+				return keyword(chars, beg, "null", TokenStream.Kind.NL_NULL);
+			case 't':
+				return keyword(chars, beg, "true", TokenStream.Kind.BL_TRUE);
+			case 'e':
+				return keyword(chars, beg, "else", TokenStream.Kind.KW_ELSE);
+			case 's':
+				return keyword(chars, beg, "size", TokenStream.Kind.KW_SIZE);
 			}
-			if (tokenText.equals("false")) {
-				return inputStream.new Token(TokenStream.Kind.BL_FALSE, t.beg, t.end, t.lineNumber);
+			break;
+		case 5:
+			switch (chars[beg]) {
+			case 'f':
+				return keyword(chars, beg, "false", TokenStream.Kind.BL_FALSE);
+			case 'c':
+				return keyword(chars, beg, "class", TokenStream.Kind.KW_CLASS);
+			case 'w':
+				return keyword(chars, beg, "while", TokenStream.Kind.KW_WHILE);
+			case 'p':
+				return keyword(chars, beg, "print", TokenStream.Kind.KW_PRINT);
+			case 'v':
+				return keyword(chars, beg, "value", TokenStream.Kind.KW_VALUE);
 			}
-			TokenStream.Kind tokenKind = keywordMap.get(tokenText);
-			if (tokenKind != null) {
-				return inputStream.new Token(tokenKind, t.beg, t.end, t.lineNumber);
+			break;
+		case 6:
+			switch (chars[beg]) {
+			case 's':
+				return keyword(chars, beg, "string", TokenStream.Kind.KW_STRING);
+			case 'i':
+				return keyword(chars, beg, "import", TokenStream.Kind.KW_IMPORT);
+			case 'r':
+				return keyword(chars, beg, "return", TokenStream.Kind.KW_RETURN);
 			}
+			break;
+		case 7:
+			return keyword(chars, beg, "boolean", TokenStream.Kind.KW_BOOLEAN);
 		}
-		return t;
+		return TokenStream.Kind.IDENT;
+	}
+	
+	// Returns kind if the chars starting at beg spell word, and IDENT otherwise. The caller has
+	// already checked that the identifier has the same length as word.
+	private static TokenStream.Kind keyword(final char[] chars, final int beg, final String word,
+			final TokenStream.Kind kind) {
+		for (int i = 0; i < word.length(); i++) {
+			if (chars[beg + i] != word.charAt(i)) {
+				return TokenStream.Kind.IDENT;
+			}
+		}
+		return kind;
 	}
 
-	// Fills in the stream.tokens list with recognized tokens from the input
+	// Attaches this scanner to the stream so that stream.nextToken() scans one token at a
+	// time when the parser asks for it, instead of reading from a filled in stream.tokens list.
+	// Only the token handed out last is held, so memory does not grow with the input.
+	public void scanLazily() {
+		if (inputStream == null) {
+			throw new IllegalArgumentException("Null input TokenStream.");
+		}
+		inputStream.setSource(this);
+	}
+	
+	// Returns the next token for a lazy stream. Once the input is exhausted the EOF token is
+	// returned again on every call.
+	Token pull() {
+		if (lastToken != null && lastToken.kind == TokenStream.Kind.EOF) {
+			return lastToken;
+		}
+		try {
+			return next();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not read the input after " + inputLength + " chars", e);
+		}
+	}
+
+	// Picks up the input that the stream has read since, and recreates a delegated engine
+	// over it
+	private void refresh() {
+		inputChars = inputStream.inputChars;
+		inputLength = inputStream.inputLength();
+		engine = selectEngine();
+	}
+
+	private ScanEngine selectEngine() {
+		return inputStream.utf8 != null || engineKind == Engine.TABLE ? newEngine(lines) : this;
+	}
+
+	// Reads the rest of streamed input, for the scanning modes that do not go through next()
+	private void readAll() {
+		if (inputStream.isComplete()) {
+			return;
+		}
+		try {
+			while (inputStream.readMore(BULK_READ)) {
+				// until the end of input
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not read the input after " + inputStream.inputLength() + " chars",
+					e);
+		}
+		refresh();
+	}
+	
+	// Moves the scanner back to the beginning of the input
+	void rewind() {
+		restartAt(0, 1);
+		tokenIndex = 0;
+	}
+
+	@Override
+	public void restartAt(int index, int lineNum) {
+		this.index = index;
+		this.lineNum = lineNum;
+		completeEnd = index;
+		completeLine = lineNum;
+		lastToken = null;
+		lastKind = null;
+		if (engine != this) {
+			engine.restartAt(index, lineNum);
+		}
+	}
+
+	// Creates another engine of the kind this scanner uses, over the same input, that records
+	// line starts in the given index. UTF-8 input is always read by a Utf8Scanner.
+	ScanEngine newEngine(LineIndex lines) {
+		if (inputStream.utf8 != null) {
+			return new Utf8Scanner(inputStream.utf8, lines);
+		}
+		if (engineKind == Engine.TABLE) {
+			return new TableScanner(inputChars, inputLength, lines);
+		}
+		return new Scanner(inputStream, engineKind, lines);
+	}
+
+	@Override
+	public int tokenBeg() {
+		return tokenBeg;
+	}
+
+	@Override
+	public int tokenEnd() {
+		return tokenEnd;
+	}
+
+	@Override
+	public int tokenLine() {
+		return tokenLine;
+	}
+
+	// Fills in the stream's packed token store, which keeps kinds and offsets in parallel
+	// arrays and gets line numbers from the stream's line index. Token objects are then only
+	// created as views by stream.nextToken() and stream.tokenAt(i).
+	public void scanPacked() {
+		if (inputStream == null) {
+			throw new IllegalArgumentException("Null input TokenStream.");
+		}
+		readAll();
+		PackedTokens packed = inputStream.newPacked(inputLength / 4 + 1);
+		TokenStream.Kind kind = engine.scanNext();
+		while (kind != null) {
+			inputStream.diagnose(packed.size(), kind, engine.tokenBeg(), engine.tokenEnd(), engine.tokenLine());
+			packed.add(kind, engine.tokenBeg(), engine.tokenEnd());
+			kind = engine.scanNext();
+		}
+		inputStream.setPacked(packed);
+	}
+
+	// Fills in the stream.tokens list like scan(), but scans chunks of a large input in
+	// parallel on the common fork-join pool. See ParallelScanner.
+	public void scanParallel() {
+		scanParallel(ForkJoinPool.commonPool(), ParallelScanner.DEFAULT_CHUNK_SIZE);
+	}
+
+	public void scanParallel(ForkJoinPool pool, int chunkSize) {
+		if (inputStream == null) {
+			throw new IllegalArgumentException("Null input TokenStream.");
+		}
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("Chunk size must be positive.");
+		}
+		readAll();
+		if (inputChars == null || inputChars.length <= chunkSize) {	// UTF-8 input is scanned sequentially
+			scan();
+			return;
+		}
+		new ParallelScanner(this, inputStream, pool, chunkSize).scan();
+		for (int i = 0; i < inputStream.tokens.size(); i++) {
+			Token token = inputStream.tokens.get(i);
+			inputStream.diagnose(i, token.kind, token.beg, token.end, token.lineNumber);
+		}
+	}
+
+	// Fills in the stream.tokens list with recognized tokens from the input. Errors are
+	// recorded in stream.diagnostics and do not stop the scan.
 	public void scan() {
 		if (inputStream == null) {
 			throw new IllegalArgumentException("Null input TokenStream.");
 		}
-		Token token;
+		inputStream.tokens.ensureCapacity(inputLength / 8 + 16); // tokens are rarely shorter on average
 		try {
-			token = next();
+			Token token = next();
 			while (token != null) {
 				inputStream.tokens.add(token);
 				token = next();
 			}
-		} catch (Exception e) {
-			e.printStackTrace();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not read the input after " + inputLength + " chars", e);
 		}
 	}
 	
-	private Character popNextChar() {
-		Character poppedChar = null;
-		if (!inputCharList.isEmpty()) {
-			poppedChar = inputCharList.removeFirst();
+	// Returns the offset of the first char at or after from that is not an ASCII char with one
+	// of the given CHAR_FLAGS
+	private int skip(int from, int flags) {
+		final char[] chars = inputChars;
+		final int length = inputLength;
+		int i = from;
+		while (i < length) {
+			char c = chars[i];
+			if (c >= 128 || (CHAR_FLAGS[c] & flags) == 0) {
+				break;
+			}
+			i++;
 		}
-		if (poppedChar != null) {
-			index++;
+		return i;
+	}
+
+	// Returns the offset of the first char at or after from that is neither whitespace nor a
+	// line break
+	private int skipSpaces(int from) {
+		final char[] chars = inputChars;
+		int i = from;
+		while (i < inputLength) {
+			char c = chars[i];
+			if (c < 128 ? (CHAR_FLAGS[c] & SPACE) == 0 : !Character.isWhitespace(c)) {
+				break;
+			}
+			i++;
+		}
+		return i;
+	}
+
+	// Returns the offset of the first "*/" at or after from, or -1. Only every other char
+	// is looked at, and the one before it only if it is a '/': a char other than '*' or
+	// '/' can be part of neither a match that starts just before it nor one that starts at it.
+	private int indexOfCommentEnd(int from) {
+		final char[] chars = inputChars;
+		final int last = inputLength - 1;
+		int i = from;
+		while (i < last) {
+			char c = chars[i + 1];
+			if (c == '/') {
+				if (chars[i] == '*') {
+					return i;
+				}
+				i += 2;
+			} else if (c == '*') {
+				i++;
+			} else {
+				i += 2;
+			}
+		}
+		return -1;
+	}
+
+	// Returns the char under the cursor and advances past it, or EOI at the end of input
+	private int popNextChar() {
+		if (index < inputLength) {
+			return inputChars[index++];
 		}
-		return poppedChar;
+		return EOI;
 	}
 	
-	private Character peekNextChar() {
-		Character peekedChar = null;
-		if (!inputCharList.isEmpty()) {
-			peekedChar = inputCharList.getFirst();
+	// Returns the char under the cursor without advancing, or EOI at the end of input
+	private int peekNextChar() {
+		if (index < inputLength) {
+			return inputChars[index];
 		}
-		return peekedChar;
+		return EOI;
 	}
 
 }
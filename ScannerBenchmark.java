@@ -0,0 +1,78 @@
+package cop5555sp15;
+
+import java.util.Random;
+
+/**
+ * Measures the scanning throughput of each engine on generated inputs that
+ * are mostly identifiers and integer literals. Run with
+ *
+ *     java cop5555sp15.ScannerBenchmark [megabytes]
+ *
+ * Every engine scans each input several times to warm up, then the best of
+ * the timed rounds is reported in millions of chars per second.
+ */
+public class ScannerBenchmark {
+	private static final int WARMUP_ROUNDS = 5;
+	private static final int ROUNDS = 10;
+
+	public static void main(String[] args) {
+		int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+		int length = megabytes << 20;
+		run("identifiers", identifiers(length));
+		run("numbers", numbers(length));
+	}
+
+	private static void run(String name, char[] input) {
+		for (Scanner.Engine engine : Scanner.Engine.values()) {
+			long best = Long.MAX_VALUE;
+			int tokens = 0;
+			for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+				TokenStream stream = new TokenStream(input);
+				Scanner scanner = new Scanner(stream, engine);
+				long start = System.nanoTime();
+				scanner.scanPacked();
+				long time = System.nanoTime() - start;
+				if (round >= WARMUP_ROUNDS) {
+					best = Math.min(best, time);
+				}
+				tokens = stream.tokenCount();
+			}
+			System.out.printf("%-12s %-14s %8d tokens %8.1f Mchars/s%n", name, engine, tokens,
+					input.length * 1e3 / best);
+		}
+	}
+
+	// identifiers of 1 to 16 chars, some of them reserved words, separated by single spaces
+	private static char[] identifiers(int length) {
+		String[] words = { "while", "return", "x", "value", "counter", "i", "boolean" };
+		String letters = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ_$0123456789";
+		Random random = new Random(1);
+		StringBuilder sb = new StringBuilder(length + 32);
+		while (sb.length() < length) {
+			if (random.nextInt(4) == 0) {
+				sb.append(words[random.nextInt(words.length)]);
+			} else {
+				sb.append(letters.charAt(random.nextInt(54)));
+				for (int n = random.nextInt(16); n > 0; n--) {
+					sb.append(letters.charAt(random.nextInt(letters.length())));
+				}
+			}
+			sb.append(' ');
+		}
+		return sb.toString().toCharArray();
+	}
+
+	// integer literals of 1 to 9 digits separated by commas
+	private static char[] numbers(int length) {
+		Random random = new Random(2);
+		StringBuilder sb = new StringBuilder(length + 32);
+		while (sb.length() < length) {
+			sb.append(1 + random.nextInt(9));
+			for (int n = random.nextInt(9); n > 0; n--) {
+				sb.append(random.nextInt(10));
+			}
+			sb.append(',');
+		}
+		return sb.toString().toCharArray();
+	}
+}
@@ -1,48 +1,33 @@
 package cop5555sp15;
 
-import static cop5555sp15.TokenStream.Kind.AND;
 import static cop5555sp15.TokenStream.Kind.ARROW;
 import static cop5555sp15.TokenStream.Kind.ASSIGN;
 import static cop5555sp15.TokenStream.Kind.AT;
-import static cop5555sp15.TokenStream.Kind.BAR;
 import static cop5555sp15.TokenStream.Kind.BL_FALSE;
 import static cop5555sp15.TokenStream.Kind.BL_TRUE;
 import static cop5555sp15.TokenStream.Kind.COLON;
 import static cop5555sp15.TokenStream.Kind.COMMA;
-import static cop5555sp15.TokenStream.Kind.DIV;
 import static cop5555sp15.TokenStream.Kind.DOT;
 import static cop5555sp15.TokenStream.Kind.EOF;
-import static cop5555sp15.TokenStream.Kind.EQUAL;
-import static cop5555sp15.TokenStream.Kind.GE;
-import static cop5555sp15.TokenStream.Kind.GT;
 import static cop5555sp15.TokenStream.Kind.IDENT;
 import static cop5555sp15.TokenStream.Kind.INT_LIT;
-import static cop5555sp15.TokenStream.Kind.KW_BOOLEAN;
 import static cop5555sp15.TokenStream.Kind.KW_CLASS;
 import static cop5555sp15.TokenStream.Kind.KW_DEF;
 import static cop5555sp15.TokenStream.Kind.KW_ELSE;
 import static cop5555sp15.TokenStream.Kind.KW_IF;
 import static cop5555sp15.TokenStream.Kind.KW_IMPORT;
-import static cop5555sp15.TokenStream.Kind.KW_INT;
 import static cop5555sp15.TokenStream.Kind.KW_PRINT;
 import static cop5555sp15.TokenStream.Kind.KW_RETURN;
-import static cop5555sp15.TokenStream.Kind.KW_STRING;
 import static cop5555sp15.TokenStream.Kind.KW_WHILE;
 import static cop5555sp15.TokenStream.Kind.LCURLY;
-import static cop5555sp15.TokenStream.Kind.LE;
 import static cop5555sp15.TokenStream.Kind.LPAREN;
-import static cop5555sp15.TokenStream.Kind.LSHIFT;
 import static cop5555sp15.TokenStream.Kind.LSQUARE;
-import static cop5555sp15.TokenStream.Kind.LT;
 import static cop5555sp15.TokenStream.Kind.MINUS;
 import static cop5555sp15.TokenStream.Kind.MOD;
 import static cop5555sp15.TokenStream.Kind.NOT;
-import static cop5555sp15.TokenStream.Kind.NOTEQUAL;
-import static cop5555sp15.TokenStream.Kind.PLUS;
 import static cop5555sp15.TokenStream.Kind.RANGE;
 import static cop5555sp15.TokenStream.Kind.RCURLY;
 import static cop5555sp15.TokenStream.Kind.RPAREN;
-import static cop5555sp15.TokenStream.Kind.RSHIFT;
 import static cop5555sp15.TokenStream.Kind.RSQUARE;
 import static cop5555sp15.TokenStream.Kind.SEMICOLON;
 import static cop5555sp15.TokenStream.Kind.STRING_LIT;
@@ -79,8 +64,8 @@ public class SimpleParser {
 
 		public String getMessage() {
 			StringBuilder sb = new StringBuilder();
-			sb.append(" error at token ").append(t.toString()).append(" ")
-					.append(msg);
+			sb.append(" error at token ").append(t.toString()).append(" column ")
+					.append(t.getColumn()).append(" ").append(msg);
 			sb.append(". Expected: ");
 			for (Kind kind : expected) {
 				sb.append(kind).append(" ");
@@ -105,17 +90,13 @@ public class SimpleParser {
 		throw new SyntaxException(t, kind);
 	}
 
-	private Kind match(Kind... kinds) throws SyntaxException {
+	private Kind match(KindSet kinds) throws SyntaxException {
 		Kind kind = t.kind;
-		if (isKind(kinds)) {
+		if (kinds.contains(kind)) {
 			consume();
 			return kind;
 		}
-		StringBuilder sb = new StringBuilder();
-		for (Kind kind1 : kinds) {
-			sb.append(kind1).append(kind1).append(" ");
-		}
-		throw new SyntaxException(t, "expected one of " + sb.toString());
+		throw new SyntaxException(t, kinds.toArray());
 	}
 
 	private boolean isKind(Kind kind) {
@@ -127,26 +108,20 @@ public class SimpleParser {
 			t = tokens.nextToken();
 	}
 
-	private boolean isKind(Kind... kinds) {
-		for (Kind kind : kinds) {
-			if (t.kind == kind)
-				return true;
-		}
-		return false;
+	private boolean isKind(KindSet kinds) {
+		return kinds.contains(t.kind);
 	}
 
-	//This is a convenient way to represent fixed sets of
-	//token kinds.  You can pass these to isKind.
-	static final Kind[] REL_OPS = { BAR, AND, EQUAL, NOTEQUAL, LT, GT, LE, GE };
-	static final Kind[] WEAK_OPS = { PLUS, MINUS };
-	static final Kind[] STRONG_OPS = { TIMES, DIV };
-	static final Kind[] VERY_STRONG_OPS = { LSHIFT, RSHIFT };
-	static final Kind[] SimpleTypes = { KW_INT, KW_BOOLEAN, KW_STRING };
+	//Fixed sets of token kinds, shared with the other parser.
+	//You can pass these to isKind and match.
+	static final KindSet REL_OPS = KindSet.REL_OPS;
+	static final KindSet WEAK_OPS = KindSet.WEAK_OPS;
+	static final KindSet STRONG_OPS = KindSet.STRONG_OPS;
+	static final KindSet VERY_STRONG_OPS = KindSet.VERY_STRONG_OPS;
+	static final KindSet SimpleTypes = KindSet.SIMPLE_TYPES;
 	
-	static final Kind[] FactorFirstSet = { IDENT, INT_LIT, BL_TRUE, BL_FALSE, STRING_LIT, LPAREN,
-										   NOT, MINUS, Kind.KW_SIZE, Kind.KW_KEY, Kind.KW_VALUE, LCURLY, AT };
-	static final Kind[] StatementFirstSet = { IDENT, Kind.KW_PRINT, Kind.KW_WHILE, LPAREN, Kind.KW_IF,
-											  MOD, Kind.KW_RETURN};
+	static final KindSet FactorFirstSet = KindSet.FACTOR_FIRST;
+	static final KindSet StatementFirstSet = KindSet.STATEMENT_FIRST;
 
 
 	public void parse() throws SyntaxException {
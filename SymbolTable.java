@@ -0,0 +1,165 @@
+package cop5555sp15;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Interns identifier spellings. Each distinct spelling gets a small int id,
+ * counting up from 0, and is stored once as a String. Lookups compare the
+ * chars of the input in place, so interning a spelling that is already known
+ * does not allocate. Names can then be compared and hashed as ints.
+ *
+ * A SymbolTable is not thread safe.
+ */
+public final class SymbolTable {
+	private int[] slots; // open addressing table of id + 1, 0 for an empty slot
+	private int[] hashes; // hash of each id's spelling
+	private String[] names; // spelling of each id
+	private int size;
+
+	public SymbolTable() {
+		slots = new int[64];
+		hashes = new int[32];
+		names = new String[32];
+		size = 0;
+	}
+
+	/** returns the id of the spelling chars[beg..end), adding it if it is new */
+	public int intern(char[] chars, int beg, int end) {
+		int hash = 0;
+		for (int i = beg; i < end; i++) {
+			hash = 31 * hash + chars[i];
+		}
+		int mask = slots.length - 1;
+		for (int slot = mix(hash) & mask;; slot = (slot + 1) & mask) {
+			int id = slots[slot] - 1;
+			if (id < 0) {
+				return add(String.valueOf(chars, beg, end - beg), hash, slot);
+			}
+			if (hashes[id] == hash && matches(names[id], chars, beg, end)) {
+				return id;
+			}
+		}
+	}
+
+	/* returns the id of the ASCII spelling bytes[beg..end), adding it if it is new */
+	int intern(ByteBuffer bytes, int beg, int end) {
+		int hash = 0;
+		for (int i = beg; i < end; i++) {
+			hash = 31 * hash + bytes.get(i);
+		}
+		int mask = slots.length - 1;
+		for (int slot = mix(hash) & mask;; slot = (slot + 1) & mask) {
+			int id = slots[slot] - 1;
+			if (id < 0) {
+				byte[] spelling = new byte[end - beg];
+				for (int i = beg; i < end; i++) {
+					spelling[i - beg] = bytes.get(i);
+				}
+				return add(new String(spelling, StandardCharsets.US_ASCII), hash, slot);
+			}
+			if (hashes[id] == hash && matches(names[id], bytes, beg, end)) {
+				return id;
+			}
+		}
+	}
+
+	/** returns the id of name, adding it if it is new */
+	public int intern(String name) {
+		return intern(name.toCharArray(), 0, name.length());
+	}
+
+	/** returns the id of name, or -1 if it has not been interned */
+	public int lookup(String name) {
+		int hash = name.hashCode(); // same function as in intern
+		int mask = slots.length - 1;
+		for (int slot = mix(hash) & mask;; slot = (slot + 1) & mask) {
+			int id = slots[slot] - 1;
+			if (id < 0) {
+				return -1;
+			}
+			if (hashes[id] == hash && names[id].equals(name)) {
+				return id;
+			}
+		}
+	}
+
+	/* forgets all symbols. The table keeps its capacity. */
+	void clear() {
+		Arrays.fill(slots, 0);
+		Arrays.fill(names, 0, size, null);
+		size = 0;
+	}
+
+	/** returns the spelling of the symbol with the given id */
+	public String name(int id) {
+		if (id < 0 || id >= size) {
+			throw new IndexOutOfBoundsException("No symbol with id " + id);
+		}
+		return names[id];
+	}
+
+	/** returns the number of distinct symbols */
+	public int size() {
+		return size;
+	}
+
+	private int add(String name, int hash, int slot) {
+		if (size == names.length) {
+			names = Arrays.copyOf(names, size * 2);
+			hashes = Arrays.copyOf(hashes, size * 2);
+		}
+		int id = size++;
+		names[id] = name;
+		hashes[id] = hash;
+		slots[slot] = id + 1;
+		if (size * 2 > slots.length) {
+			rehash();
+		}
+		return id;
+	}
+
+	private void rehash() {
+		int[] newSlots = new int[slots.length * 2];
+		int mask = newSlots.length - 1;
+		for (int id = 0; id < size; id++) {
+			int slot = mix(hashes[id]) & mask;
+			while (newSlots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			newSlots[slot] = id + 1;
+		}
+		slots = newSlots;
+	}
+
+	// spreads the bits of hash so that similar names do not cluster in the low bits
+	private static int mix(int hash) {
+		int h = hash * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private static boolean matches(String name, char[] chars, int beg, int end) {
+		if (name.length() != end - beg) {
+			return false;
+		}
+		for (int i = beg; i < end; i++) {
+			if (name.charAt(i - beg) != chars[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean matches(String name, ByteBuffer bytes, int beg, int end) {
+		if (name.length() != end - beg) {
+			return false;
+		}
+		for (int i = beg; i < end; i++) {
+			if (name.charAt(i - beg) != bytes.get(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,302 @@
+package cop5555sp15;
+
+import static cop5555sp15.TokenStream.Kind.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import cop5555sp15.TokenStream.Kind;
+
+/**
+ * Table driven scan engine. Every char is mapped to a char class by a lookup
+ * table, and a transition matrix indexed by state and char class gives the
+ * next state. A token ends when there is no transition or the input ends, and
+ * the action of the state reached tells which token it was.
+ *
+ * The states for operators and separators are built at class initialization
+ * from the OPERATORS table, which pairs each spelling with its Kind. The
+ * states for whitespace, comments, string literals, identifiers and integer
+ * literals are added by hand so that they follow the state machine in Scanner,
+ * including its handling of escapes in string literals.
+ */
+final class TableScanner implements ScanEngine {
+
+	private static final Object[][] OPERATORS = {
+			{ ".", DOT }, { "..", RANGE }, { ";", SEMICOLON }, { ",", COMMA },
+			{ "(", LPAREN }, { ")", RPAREN }, { "[", LSQUARE }, { "]", RSQUARE },
+			{ "{", LCURLY }, { "}", RCURLY }, { ":", COLON }, { "?", QUESTION },
+			{ "=", ASSIGN }, { "|", BAR }, { "&", AND }, { "==", EQUAL },
+			{ "!=", NOTEQUAL }, { "<", LT }, { ">", GT }, { "<=", LE }, { ">=", GE },
+			{ "+", PLUS }, { "-", MINUS }, { "*", TIMES }, { "/", DIV }, { "%", MOD },
+			{ "!", NOT }, { "<<", LSHIFT }, { ">>", RSHIFT }, { "->", ARROW }, { "@", AT } };
+
+	private static final Kind[] KINDS = Kind.values();
+
+	// char classes that are not operator chars. Each operator char gets a class of its own.
+	static final int OTHER = 0;
+	private static final int LETTER = 1; // A-Z, a-z, $ and _
+	private static final int ZERO = 2;
+	private static final int DIGIT = 3; // 1-9
+	static final int SPACE = 4; // whitespace other than line breaks
+	private static final int LF = 5;
+	private static final int CR = 6;
+	private static final int QUOTE = 7;
+	private static final int BACKSLASH = 8;
+	private static final int FIRST_OPERATOR_CLASS = 9;
+
+	// actions of a state once the token ends there. Actions >= 0 are Kind ordinals.
+	static final int SKIP = -1; // whitespace or comment, start over
+	static final int NEWLINE = -2; // like SKIP, but also counts a line
+	static final int KEYWORD = -3; // identifier, look up whether it is a reserved word
+
+	static final int START = 0;
+
+	private static final byte[] CHAR_CLASSES = new byte[128];
+	private static final int CLASS_COUNT;
+	private static final int[] TRANSITIONS; // TRANSITIONS[state * CLASS_COUNT + class], -1 for none
+	private static final int[] ACTIONS;
+
+	static {
+		Arrays.fill(CHAR_CLASSES, (byte) OTHER);
+		for (char c = 0; c < 128; c++) {
+			if (Character.isWhitespace(c)) {
+				CHAR_CLASSES[c] = SPACE;
+			}
+		}
+		for (char c = 'A'; c <= 'Z'; c++) {
+			CHAR_CLASSES[c] = LETTER;
+			CHAR_CLASSES[c + 'a' - 'A'] = LETTER;
+		}
+		CHAR_CLASSES['$'] = LETTER;
+		CHAR_CLASSES['_'] = LETTER;
+		CHAR_CLASSES['0'] = ZERO;
+		for (char c = '1'; c <= '9'; c++) {
+			CHAR_CLASSES[c] = DIGIT;
+		}
+		CHAR_CLASSES['\n'] = LF;
+		CHAR_CLASSES['\r'] = CR;
+		CHAR_CLASSES['"'] = QUOTE;
+		CHAR_CLASSES['\\'] = BACKSLASH;
+		int classCount = FIRST_OPERATOR_CLASS;
+		for (Object[] operator : OPERATORS) {
+			for (char c : ((String) operator[0]).toCharArray()) {
+				if (CHAR_CLASSES[c] == OTHER) {
+					CHAR_CLASSES[c] = (byte) classCount++;
+				}
+			}
+		}
+		CLASS_COUNT = classCount;
+
+		Builder b = new Builder();
+		int start = b.state(EOF.ordinal()); // at the end of input
+		assert start == START;
+		for (Object[] operator : OPERATORS) {
+			String spelling = (String) operator[0];
+			int state = START;
+			for (char c : spelling.toCharArray()) {
+				int next = b.next(state, CHAR_CLASSES[c]);
+				if (next < 0) {
+					next = b.state(ILLEGAL_CHAR.ordinal());
+					b.set(state, CHAR_CLASSES[c], next);
+				}
+				state = next;
+			}
+			b.action(state, ((Kind) operator[1]).ordinal());
+		}
+
+		int illegal = b.state(ILLEGAL_CHAR.ordinal());
+		b.set(START, OTHER, illegal);
+		b.set(START, BACKSLASH, illegal);
+
+		int space = b.state(SKIP);
+		b.set(START, SPACE, space);
+		b.set(space, SPACE, space);
+		int lf = b.state(NEWLINE);
+		int cr = b.state(NEWLINE);
+		b.set(START, LF, lf);
+		b.set(START, CR, cr);
+		b.set(cr, LF, lf);
+
+		// comments do not count the lines they span
+		int slash = b.next(START, CHAR_CLASSES['/']);
+		int comment = b.state(UNTERMINATED_COMMENT.ordinal());
+		int commentStar = b.state(UNTERMINATED_COMMENT.ordinal());
+		int commentEnd = b.state(SKIP);
+		b.set(slash, CHAR_CLASSES['*'], comment);
+		b.setAll(comment, comment);
+		b.set(comment, CHAR_CLASSES['*'], commentStar);
+		b.setAll(commentStar, comment);
+		b.set(commentStar, CHAR_CLASSES['*'], commentStar);
+		b.set(commentStar, CHAR_CLASSES['/'], commentEnd);
+
+		// after a backslash the next char is skipped, and if that was a quote the one after it too
+		int string = b.state(UNTERMINATED_STRING.ordinal());
+		int stringEscape = b.state(UNTERMINATED_STRING.ordinal());
+		int stringEscapeQuote = b.state(UNTERMINATED_STRING.ordinal());
+		int stringEnd = b.state(STRING_LIT.ordinal());
+		b.set(START, QUOTE, string);
+		b.setAll(string, string);
+		b.set(string, QUOTE, stringEnd);
+		b.set(string, BACKSLASH, stringEscape);
+		b.setAll(stringEscape, string);
+		b.set(stringEscape, QUOTE, stringEscapeQuote);
+		b.setAll(stringEscapeQuote, string);
+
+		int ident = b.state(KEYWORD);
+		b.set(START, LETTER, ident);
+		b.set(ident, LETTER, ident);
+		b.set(ident, ZERO, ident);
+		b.set(ident, DIGIT, ident);
+
+		int zero = b.state(INT_LIT.ordinal());
+		int intLit = b.state(INT_LIT.ordinal());
+		b.set(START, ZERO, zero);
+		b.set(START, DIGIT, intLit);
+		b.set(intLit, ZERO, intLit);
+		b.set(intLit, DIGIT, intLit);
+
+		TRANSITIONS = b.transitions();
+		ACTIONS = b.actions();
+	}
+
+	// Collects states while the tables are built
+	private static class Builder {
+		private final List<int[]> rows = new ArrayList<>();
+		private final List<Integer> actions = new ArrayList<>();
+
+		int state(int action) {
+			int[] row = new int[CLASS_COUNT];
+			Arrays.fill(row, -1);
+			rows.add(row);
+			actions.add(action);
+			return rows.size() - 1;
+		}
+
+		int next(int state, int charClass) {
+			return rows.get(state)[charClass];
+		}
+
+		void set(int state, int charClass, int next) {
+			rows.get(state)[charClass] = next;
+		}
+
+		void setAll(int state, int next) {
+			Arrays.fill(rows.get(state), next);
+		}
+
+		void action(int state, int action) {
+			actions.set(state, action);
+		}
+
+		int[] transitions() {
+			int[] transitions = new int[rows.size() * CLASS_COUNT];
+			for (int i = 0; i < rows.size(); i++) {
+				System.arraycopy(rows.get(i), 0, transitions, i * CLASS_COUNT, CLASS_COUNT);
+			}
+			return transitions;
+		}
+
+		int[] actions() {
+			int[] result = new int[actions.size()];
+			for (int i = 0; i < result.length; i++) {
+				result[i] = actions.get(i);
+			}
+			return result;
+		}
+	}
+
+	static int charClass(char ch) {
+		if (ch < 128) {
+			return CHAR_CLASSES[ch];
+		}
+		return Character.isWhitespace(ch) ? SPACE : OTHER;
+	}
+
+	// the state reached from state on a char of the given class, or -1 if the token ends
+	static int transition(int state, int charClass) {
+		return TRANSITIONS[state * CLASS_COUNT + charClass];
+	}
+
+	// what to do when a token ends in state
+	static int action(int state) {
+		return ACTIONS[state];
+	}
+
+	private final char[] inputChars;
+	private final int length; // number of chars of inputChars to scan
+	private final LineIndex lines;
+	private int index;
+	private int lineNum;
+	private Kind lastKind;
+	private int tokenBeg;
+	private int tokenEnd;
+	private int tokenLine;
+
+	TableScanner(char[] inputChars, int length, LineIndex lines) {
+		this.inputChars = inputChars;
+		this.length = length;
+		this.lines = lines;
+		restartAt(0, 1);
+	}
+
+	@Override
+	public Kind scanNext() {
+		if (lastKind == EOF) {
+			return null;
+		}
+		final char[] chars = inputChars;
+		final int length = this.length;
+		while (true) {
+			int beg = index;
+			int state = START;
+			int i = index;
+			while (i < length) {
+				int next = TRANSITIONS[state * CLASS_COUNT + charClass(chars[i])];
+				if (next < 0) {
+					break;
+				}
+				state = next;
+				i++;
+			}
+			index = i;
+			int action = ACTIONS[state];
+			if (action == SKIP) {
+				continue;
+			}
+			if (action == NEWLINE) {
+				lineNum++;
+				lines.add(i);
+				continue;
+			}
+			Kind kind = action == KEYWORD ? Scanner.checkKeyword(chars, beg, i) : KINDS[action];
+			lastKind = kind;
+			tokenBeg = beg;
+			tokenEnd = i;
+			tokenLine = lineNum;
+			return kind;
+		}
+	}
+
+	@Override
+	public int tokenBeg() {
+		return tokenBeg;
+	}
+
+	@Override
+	public int tokenEnd() {
+		return tokenEnd;
+	}
+
+	@Override
+	public int tokenLine() {
+		return tokenLine;
+	}
+
+	@Override
+	public void restartAt(int index, int lineNum) {
+		this.index = index;
+		this.lineNum = lineNum;
+		lastKind = null;
+	}
+}
@@ -2,7 +2,10 @@ package cop5555sp15;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.Rule;
 import org.junit.Test;
@@ -11,6 +14,14 @@ import org.junit.rules.ExpectedException;
 import cop5555sp15.Parser.SyntaxException;
 import cop5555sp15.TokenStream.Kind;
 import cop5555sp15.ast.ASTNode;
+import cop5555sp15.ast.AssignmentStatement;
+import cop5555sp15.ast.Block;
+import cop5555sp15.ast.Closure;
+import cop5555sp15.ast.ClosureDec;
+import cop5555sp15.ast.PrintStatement;
+import cop5555sp15.ast.Program;
+import cop5555sp15.ast.ToStringVisitor;
+import cop5555sp15.ast.WhileStatement;
 import static cop5555sp15.TokenStream.Kind.*;
 
 public class TestParser {
@@ -260,4 +271,225 @@ public class TestParser {
 		System.out.println(input);
 		System.out.println(parseCorrectInput(input));
 	} 	
+	@Test
+	public void batch() throws InterruptedException {
+		System.out.println("***********\nbatch");
+		List<String> sources = Arrays.asList("class A { } ", "class B { x = 1 + ; } ", "class C { def x: int; x = 3; } ",
+				"class D { # } ", "class E { x = 99999999999; } ", "class F { y = 2; } ");
+		List<BatchParser.Result> results = new BatchParser(2, 40).parseStrings(sources);
+		assertEquals(6, results.size());
+		assertNotNull(results.get(0).program);
+		assertNull(results.get(1).program);
+		assertEquals(1, results.get(1).syntaxErrors.size());
+		assertEquals("2", results.get(2).name);
+		assertNotNull(results.get(2).program);
+		assertEquals(parseCorrectInput(sources.get(2)).toString(), results.get(2).program.toString());
+		assertNull(results.get(3).program);
+		assertEquals(1, results.get(3).diagnostics.size());
+		assertNull(results.get(4).program); // the literal is too large for getIntVal
+		assertTrue(results.get(4).failure instanceof NumberFormatException);
+		assertNull(results.get(5).failure);
+		assertNotNull(results.get(5).program);
+	} 	
+	@Test
+	public void lookahead() {
+		System.out.println("***********\nlookahead");
+		TokenStream stream = new TokenStream("class A { x = 1; }");
+		new Scanner(stream).scanLazily();
+		Lookahead tokens = new Lookahead(stream, 3);
+		assertEquals(KW_CLASS, tokens.peek(0).kind);
+		assertEquals(LCURLY, tokens.peek(2).kind);
+		tokens.consume();
+		assertEquals(IDENT, tokens.peek(0).kind);
+		assertEquals(IDENT, tokens.peek(2).kind);
+		assertEquals(ASSIGN, tokens.peek(3).kind);
+		for (int i = 0; i < 6; i++) {
+			tokens.consume();
+		}
+		assertEquals(RCURLY, tokens.peek(0).kind);
+		assertEquals(EOF, tokens.peek(1).kind);
+		assertEquals(EOF, tokens.peek(3).kind);
+		tokens.consume();
+		tokens.consume();
+		assertEquals(EOF, tokens.peek(0).kind);
+	} 	
+	@Test
+	public void operatorPrecedence() {
+		System.out.println("***********\noperatorPrecedence");
+		String input = "class A { x = a | b == c + d * e << f - g / h & i; }";
+		String grouped = "class A { x = ((a | b) == ((c + (d * (e << f))) - (g / h))) & i; }";
+		ASTNode ast = parseCorrectInput(input);
+		System.out.println(ast);
+		assertEquals(parseCorrectInput(grouped).toString(), ast.toString());
+	} 	
+	@Test
+	public void kindSet() {
+		System.out.println("***********\nkindSet");
+		KindSet set = KindSet.of(EOF, IDENT, UNTERMINATED_COMMENT, PLUS);
+		assertTrue(set.contains(IDENT));
+		assertTrue(set.contains(UNTERMINATED_COMMENT));
+		assertFalse(set.contains(MINUS));
+		assertArrayEquals(new Kind[] { IDENT, PLUS, EOF, UNTERMINATED_COMMENT }, set.toArray());
+		for (Kind kind : Kind.values()) {
+			assertEquals(kind == PLUS || kind == MINUS, KindSet.WEAK_OPS.contains(kind));
+		}
+	} 	
+	@Test
+	public void incrementalReparse() {
+		System.out.println("***********\nincrementalReparse");
+		StringBuilder input = new StringBuilder("class A {\n def f = {a: int -> print a; };\n while (x) { y = 1; };\n z = 2;\n}");
+		TokenStream stream = new TokenStream(input.toString());
+		new Scanner(stream).scan();
+		Parser parser = new Parser(stream, true);
+		assertNotNull(parser.parse());
+		String[][] edits = { { "print a", "print a + 1" }, { "y = 1", "y = (" }, { "y = (", "y = 3" },
+				{ "while (x) {", "while (x) " }, { "while (x) ", "while (x) {" }, { " z = 2;", " def g = {-> }; z = 2;" } };
+		for (String[] edit : edits) {
+			assertReparsed(parser, input, edit[0], edit[1]);
+		}
+
+		// the edited statement and the next one have errors at the same token
+		input = new StringBuilder("class A { def f = {-> x = y[1 def; }; }");
+		stream = new TokenStream(input.toString());
+		new Scanner(stream).scan();
+		parser = new Parser(stream, true);
+		assertNull(parser.parse());
+		assertReparsed(parser, input, "= y[1", "(");
+
+		// the error of a statement that the edit removes is at the } of its block
+		input = new StringBuilder("class A {\nx = }1 f;\n}");
+		stream = new TokenStream(input.toString());
+		new Scanner(stream).scan();
+		parser = new Parser(stream, true);
+		assertNull(parser.parse());
+		assertReparsed(parser, input, "x =", "");
+		System.out.println(parser.getPartialProgram());
+	}
+
+	// replaces the first old in input by replacement, reparses, and compares the result
+	// and the errors with those of a fresh parse
+	private static void assertReparsed(Parser parser, StringBuilder input, String old, String replacement) {
+		int offset = input.indexOf(old);
+		input.replace(offset, offset + old.length(), replacement);
+		Program reparsed = parser.reparse(offset, old.length(), replacement);
+		TokenStream fresh = new TokenStream(input.toString());
+		new Scanner(fresh).scan();
+		Parser freshParser = new Parser(fresh);
+		Program expected = freshParser.parse();
+		assertEquals(expected == null, reparsed == null);
+		assertEquals(freshParser.getExceptionList().toString(), parser.getExceptionList().toString());
+		assertEquals(String.valueOf(freshParser.getPartialProgram()), String.valueOf(parser.getPartialProgram()));
+	}
+
+	@Test
+	public void incrementalReparseReuse() throws Exception {
+		System.out.println("***********\nincrementalReparseReuse");
+		String input = "class A {\n def f = {a: int -> print a; };\n while (x) { y = 1; };\n z = 2;\n}";
+		TokenStream stream = new TokenStream(input);
+		new Scanner(stream).scan();
+		Parser parser = new Parser(stream, true);
+		Program program = parser.parse();
+		// Block, ClosureDec, Closure, print a, while, its Block, y = 1, z = 2
+		List<ASTNode> before = nodes(program);
+		assertEquals(8, before.size());
+
+		// only the print statement in the closure is parsed again
+		int offset = input.indexOf("print a") + 7;
+		assertSame(program, parser.reparse(offset, 0, " + 1"));
+		List<ASTNode> after = nodes(program);
+		assertEquals(before.size(), after.size());
+		for (int i = 0; i < before.size(); i++) {
+			if (i == 3) {
+				assertNotSame(before.get(i), after.get(i));
+			} else {
+				assertSame(before.get(i), after.get(i));
+			}
+		}
+		input = input.substring(0, offset) + " + 1" + input.substring(offset);
+		assertEquals(input.indexOf("z = 2"), after.get(7).firstToken.getBeg()); // moved by the edit
+		assertEquals(4, after.get(7).firstToken.getLineNumber());
+
+		// only the assignment in the block of the while statement is parsed again
+		before = after;
+		assertSame(program, parser.reparse(input.indexOf("y = 1") + 4, 1, "2"));
+		after = nodes(program);
+		for (int i = 0; i < before.size(); i++) {
+			if (i == 6) {
+				assertNotSame(before.get(i), after.get(i));
+			} else {
+				assertSame(before.get(i), after.get(i));
+			}
+		}
+	}
+
+	// the blocks, closures and statements of the AST in the order ToStringVisitor visits them
+	private static List<ASTNode> nodes(Program program) throws Exception {
+		final List<ASTNode> nodes = new ArrayList<>();
+		program.visit(new ToStringVisitor() {
+			@Override
+			public Object visitBlock(Block block, Object arg) throws Exception {
+				nodes.add(block);
+				return super.visitBlock(block, arg);
+			}
+
+			@Override
+			public Object visitClosureDec(ClosureDec closureDec, Object arg) throws Exception {
+				nodes.add(closureDec);
+				return super.visitClosureDec(closureDec, arg);
+			}
+
+			@Override
+			public Object visitClosure(Closure closure, Object arg) throws Exception {
+				nodes.add(closure);
+				return super.visitClosure(closure, arg);
+			}
+
+			@Override
+			public Object visitPrintStatement(PrintStatement printStatement, Object arg) throws Exception {
+				nodes.add(printStatement);
+				return super.visitPrintStatement(printStatement, arg);
+			}
+
+			@Override
+			public Object visitWhileStatement(WhileStatement whileStatement, Object arg) throws Exception {
+				nodes.add(whileStatement);
+				return super.visitWhileStatement(whileStatement, arg);
+			}
+
+			@Override
+			public Object visitAssignmentStatement(AssignmentStatement assignmentStatement, Object arg)
+					throws Exception {
+				nodes.add(assignmentStatement);
+				return super.visitAssignmentStatement(assignmentStatement, arg);
+			}
+		}, "");
+		return nodes;
+	}
+
+	@Test
+	public void parallelParse() {
+		System.out.println("***********\nparallelParse");
+		StringBuilder sb = new StringBuilder("import a.b; class A {\n");
+		for (int i = 0; i < 200; i++) {
+			sb.append(" def f").append(i).append(" = {x: int -> if (x > ").append(i).append(") { print x; }; };\n");
+			sb.append(" y").append(i).append(" = f").append(i).append("[").append(i).append("] + 1;\n");
+		}
+		String valid = sb.append("}").toString();
+		String[] inputs = { valid, valid.replace("y7 = f7[7]", "y7 = f7[7"), valid.replace(" } };", " } ;") };
+		for (String input : inputs) {
+			TokenStream stream = new TokenStream(input);
+			new Scanner(stream).scan();
+			Parser parser = new Parser(stream);
+			Program parallel = parser.parseParallel(ForkJoinPool.commonPool(), 64);
+			TokenStream fresh = new TokenStream(input);
+			new Scanner(fresh).scan();
+			Parser freshParser = new Parser(fresh);
+			Program expected = freshParser.parse();
+			assertEquals(expected == null, parallel == null);
+			assertEquals(freshParser.getExceptionList().size(), parser.getExceptionList().size());
+			if (expected != null) {
+				assertEquals(expected.toString(), parallel.toString());
+			}
+		}
+	}
 }
@@ -84,4 +84,21 @@ public class TestParserErrorHandling {
 	}
 	
 
+	@Test
+	public void partialProgram() throws SyntaxException {
+		System.out.println("***********\npartialProgram");
+		String input = "class A { x = 1; y = & 2; print x; def z = {-> w = ; print ) ; }; if (x) { def; }; }";
+		System.out.println(input);
+		parseIncorrectInput(input, AND, SEMICOLON, RPAREN, SEMICOLON);
+		TokenStream stream = new TokenStream(input);
+		new Scanner(stream).scan();
+		Parser parser = new Parser(stream);
+		assertNull(parser.parse());
+		String partial = parser.getPartialProgram().toString();
+		System.out.println(partial);
+		assertTrue(partial.contains("PrintStatement"));
+		assertTrue(partial.contains("IfStatement"));
+		assertEquals(4, partial.split("ErrorStatement", -1).length - 1);
+	}
+
 }
@@ -2,7 +2,15 @@ package cop5555sp15;
  
 import static org.junit.Assert.*;
  
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
  
 import org.junit.Test;
  
@@ -580,4 +588,315 @@ public class TestScanner {
 	}
 	
 	
+	@Test
+	public void lazyScan(){
+		String input = "class A {def x: int; x = 5 .. 10; /* comment */ print \"s\";}\n@";
+		TokenStream eager = scanInput(input);
+		TokenStream lazy = new TokenStream(input);
+		new Scanner(lazy).scanLazily();
+		for (Token expected : eager.tokens) {
+			Token t = lazy.nextToken();
+			assertEquals(expected, t);
+			assertEquals(expected.getText(), t.getText());
+		}
+		assertEquals(EOF, lazy.nextToken().kind); // stays at EOF
+		assertEquals(0, lazy.tokens.size());
+		lazy.reset();
+		assertEquals(eager.tokens.get(0), lazy.nextToken());
+	}
+	
+	@Test
+	public void mappedFileInput() throws IOException {
+		String input = "class A {x = \"caf\u00e9 \ud83d\ude00\"; y = 1;}\r\n/* \u00fc */ z";
+		Path file = Files.createTempFile("mapped", ".txt");
+		try {
+			Files.write(file, input.getBytes(StandardCharsets.UTF_8));
+			TokenStream mapped = TokenStream.fromFile(file);
+			new Scanner(mapped).scan();
+			TokenStream expected = scanInput(input);
+			assertArrayEquals(makeTokenTextArray(expected), makeTokenTextArray(mapped));
+			assertArrayEquals(expected.tokens.toArray(), mapped.tokens.toArray());
+		} finally {
+			Files.delete(file);
+		}
+	}
+	
+	
+	@Test
+	public void packedScan(){
+		String input = "def f = {x:int -> return \"a\\\"b\";};\n/* c */ f(12) != null $ #";
+		TokenStream eager = scanInput(input);
+		TokenStream packed = new TokenStream(input);
+		new Scanner(packed).scanPacked();
+		assertEquals(0, packed.tokens.size());
+		assertEquals(eager.tokens.size(), packed.tokenCount());
+		for (int i = 0; i < eager.tokens.size(); i++) {
+			Token expected = eager.tokens.get(i);
+			assertEquals(expected.kind, packed.kindAt(i));
+			assertEquals(expected.lineNumber, packed.lineAt(i));
+			assertEquals(expected, packed.nextToken());
+		}
+		assertEquals(eager.toString(), packed.toString());
+	}
+	
+	@Test
+	public void tableEngine(){
+		String input = "import X.Y;\r\nclass A {def f = {x:int, y -> return x << 2 >= y..0 != -1;};\n"
+				+ "/* a\n**/ s = \"a\\\"b\\n\" + 007 * $z_9 % @@[1:2] & !true | null == false ? # \u00a0\t}\n\"abc";
+		TokenStream expected = scanInput(input);
+		TokenStream table = new TokenStream(input);
+		new Scanner(table, Scanner.Engine.TABLE).scan();
+		assertArrayEquals(expected.tokens.toArray(), table.tokens.toArray());
+	}
+	
+	@Test
+	public void parallelScan(){
+		String input = "class A {\n x = \"a\nb\\\"\n\";\n/* c\n\n d */ y = 12;\r\n"
+				+ "\"\n;\n\" z\n/*\n*/\n# w\n/* unterminated\n;\n";
+		TokenStream expected = scanInput(input);
+		for (int chunkSize = 1; chunkSize < input.length(); chunkSize++) {
+			TokenStream parallel = new TokenStream(input);
+			new Scanner(parallel).scanParallel(ForkJoinPool.commonPool(), chunkSize);
+			assertArrayEquals(expected.tokens.toArray(), parallel.tokens.toArray());
+		}
+	}
+	
+	@Test
+	public void incrementalEdit(){
+		String input = "class A {\n x = 12;\n y = \"s\";\n z = x + y;\n}";
+		TokenStream stream = scanInput(input);
+		Token y = stream.tokens.get(7);
+		stream.edit(input.indexOf("12"), 2, "3\n\n4"); // splits a token and adds lines
+		assertEquals(scanInput("class A {\n x = 3\n\n4;\n y = \"s\";\n z = x + y;\n}").toString(), stream.toString());
+		assertSame(y, stream.tokens.get(8)); // kept, and moved by the edit
+		assertEquals(input.indexOf('y'), y.beg);
+		assertEquals(input.indexOf('y') + 2, y.getBeg());
+		assertEquals(5, y.getLineNumber());
+		stream.edit(0, 0, "/* "); // everything up to EOF becomes an unterminated comment
+		Kind[] expectedKinds = { UNTERMINATED_COMMENT, EOF };
+		assertArrayEquals(expectedKinds, makeKindArray(stream));
+		stream.edit(2, 1, "*/");
+		assertEquals(scanInput("/**/class A {\n x = 3\n\n4;\n y = \"s\";\n z = x + y;\n}").toString(), stream.toString());
+	}
+	
+	@Test
+	public void identifierSymbols(){
+		String input = "abc x abc abcd x";
+		TokenStream stream = scanInput(input);
+		Token[] t = stream.tokens.toArray(new Token[0]);
+		assertEquals(t[0].getSymbol(), t[2].getSymbol());
+		assertEquals(t[1].getSymbol(), t[4].getSymbol());
+		assertFalse(t[0].getSymbol() == t[3].getSymbol());
+		assertEquals(3, stream.symbols.size());
+		assertSame(t[0].getText(), t[2].getText()); // spelling is stored once
+		assertEquals(t[3].getSymbol(), stream.symbols.lookup("abcd"));
+		assertEquals(-1, stream.symbols.lookup("ab"));
+	}
+	
+	@Test
+	public void literalValues(){
+		String input = "0 42 2147483647 2147483648 \"plain\" \"a\\nb\"";
+		TokenStream stream = scanInput(input);
+		assertEquals(0, stream.tokens.get(0).getIntVal());
+		assertEquals(42, stream.tokens.get(1).getIntVal());
+		assertEquals(Integer.MAX_VALUE, stream.tokens.get(2).getIntVal());
+		try {
+			stream.tokens.get(3).getIntVal();
+			fail("expected NumberFormatException");
+		} catch (NumberFormatException e) {
+			assertEquals("For input string: \"2147483648\"", e.getMessage());
+		}
+		Token plain = stream.tokens.get(4);
+		assertEquals("plain", plain.getText());
+		assertSame(plain.getText(), plain.getText()); // decoded once
+		assertEquals("a\nb", stream.tokens.get(5).getText());
+		TokenStream packed = new TokenStream(input);
+		new Scanner(packed).scanPacked();
+		assertSame(packed.tokenAt(4).getText(), packed.tokenAt(4).getText()); // also for new views
+	}
+	
+	@Test
+	public void lineIndex(){
+		String input = "a\n  bc\r\n\r\n   d /* x\n */ e\n";
+		TokenStream stream = scanInput(input);
+		assertEquals(5, stream.lines.lineCount()); // the break inside the comment is not counted
+		for (Token t : stream.tokens) {
+			assertEquals(t.lineNumber, stream.lines.line(t.beg));
+		}
+		Token bc = stream.tokens.get(1);
+		assertEquals(2, bc.lineNumber);
+		assertEquals(3, bc.getColumn());
+		Token d = stream.tokens.get(2);
+		assertEquals(4, d.lineNumber);
+		assertEquals(4, d.getColumn());
+		assertEquals(input.indexOf('d') - 3, stream.lines.lineStart(4));
+	}
+	
+	@Test
+	public void utf8Input(){
+		String input = "x = \"caf\u00e9 \\\"\ud83d\ude00\"; /* \u00fc\n */\u3000y = 12;\r\n\u00e9 \ud83d\ude00 if";
+		TokenStream expected = scanInput(input);
+		byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+		TokenStream chars = TokenStream.fromUtf8(bytes, TokenStream.OffsetUnit.CHARS);
+		new Scanner(chars).scan();
+		assertArrayEquals(expected.tokens.toArray(), chars.tokens.toArray());
+		assertArrayEquals(makeTokenTextArray(expected), makeTokenTextArray(chars));
+		assertEquals(expected.lines.lineStart(2), chars.lines.lineStart(2));
+
+		TokenStream raw = TokenStream.fromUtf8(bytes, TokenStream.OffsetUnit.BYTES);
+		new Scanner(raw, Scanner.Engine.TABLE).scanPacked();
+		Token lit = raw.tokenAt(2);
+		assertEquals(STRING_LIT, lit.kind);
+		assertEquals("caf\u00e9 \"\ud83d\ude00", lit.getText());
+		assertEquals(input.indexOf(';') + 3, raw.tokenAt(3).beg); // the e-acute and the emoji take 1 + 2 more bytes
+		assertEquals(12, raw.tokenAt(6).getIntVal());
+		assertEquals(chars.tokens.get(4).getSymbol(), chars.symbols.lookup("y"));
+		// the emoji outside a string is one token in bytes but one per surrogate in chars
+		assertEquals(expected.tokens.size() - 1, raw.tokenCount());
+		assertEquals(KW_IF, raw.kindAt(raw.tokenCount() - 2));
+	}
+	
+	@Test
+	public void readerInput(){
+		String input = "def s = \"a long string\";\r\n/* a\n comment */ x <= 123 ->\r";
+		TokenStream expected = scanInput(input);
+		TokenStream hinted = new TokenStream(new StringReader(input), input.length());
+		new Scanner(hinted).scan();
+		assertArrayEquals(expected.tokens.toArray(), hinted.tokens.toArray());
+		TokenStream overHinted = new TokenStream(new StringReader(input), Integer.MAX_VALUE);
+		new Scanner(overHinted).scan();
+		assertArrayEquals(expected.tokens.toArray(), overHinted.tokens.toArray());
+
+		// hands out at most 2 chars per read, like a slow pipe
+		final int[] consumed = {0};
+		Reader slow = new Reader() {
+			public int read(char[] buf, int off, int len) {
+				if (consumed[0] == input.length()) {
+					return -1;
+				}
+				int n = Math.min(Math.min(len, 2), input.length() - consumed[0]);
+				input.getChars(consumed[0], consumed[0] + n, buf, off);
+				consumed[0] += n;
+				return n;
+			}
+
+			public void close() {
+			}
+		};
+		TokenStream streamed = TokenStream.streaming(slow);
+		new Scanner(streamed, Scanner.Engine.TABLE).scanLazily();
+		assertEquals(KW_DEF, streamed.nextToken().kind);
+		assertTrue(consumed[0] < input.length()); // the first token comes before the rest is read
+		for (int i = 1; i < expected.tokens.size(); i++) {
+			Token t = streamed.nextToken();
+			assertEquals(expected.tokens.get(i), t);
+			assertEquals(expected.tokens.get(i).getText(), t.getText());
+		}
+		assertEquals(expected.lines.lineCount(), streamed.lines.lineCount());
+	}
+	
+	@Test
+	public void longCommentsAndSpaces(){
+		String input = "/*****\n * banner *\n ****/ \t  \u3000 a/**/b /* * / **/c \f\n  /*/ d";
+		TokenStream stream = scanInput(input);
+		Kind[] expectedKinds = { IDENT, IDENT, IDENT, UNTERMINATED_COMMENT, EOF };
+		assertArrayEquals(expectedKinds, makeKindArray(stream));
+		assertEquals(input.indexOf(" a/") + 1, stream.tokens.get(0).beg);
+		assertEquals(1, stream.tokens.get(2).lineNumber);
+		assertEquals(2, stream.tokens.get(3).lineNumber);
+		assertEquals(input.lastIndexOf('/') - 2, stream.tokens.get(3).beg);
+	}
+	
+	@Test
+	public void diagnostics(){
+		String input = "x = 2147483647 # 2147483648;\n  y \\ 99999999999\n/* \"a";
+		TokenStream stream = scanInput(input);
+		assertEquals(EOF, stream.tokens.get(stream.tokens.size() - 1).kind);
+		Diagnostics.Diagnostic[] found = stream.diagnostics.all().toArray(new Diagnostics.Diagnostic[0]);
+		assertEquals(5, found.length);
+		assertEquals(ILLEGAL_CHAR, found[0].kind);
+		assertEquals(input.indexOf('#'), found[0].beg);
+		assertEquals(INT_LIT, found[1].kind);
+		assertEquals(1, found[1].lineNumber);
+		assertEquals(18, found[1].column);
+		assertEquals(ILLEGAL_CHAR, found[2].kind);
+		assertEquals(INT_LIT, found[3].kind);
+		assertEquals(2, found[3].lineNumber);
+		assertEquals(UNTERMINATED_COMMENT, found[4].kind);
+		assertEquals("line 3 column 1: unterminated comment", found[4].toString());
+
+		TokenStream packed = new TokenStream(input);
+		new Scanner(packed, Scanner.Engine.TABLE).scanPacked();
+		assertEquals(stream.diagnostics.toString(), packed.diagnostics.toString());
+		stream.edit(input.indexOf('#'), 1, " ");
+		assertEquals(4, stream.diagnostics.size());
+		Diagnostics.Diagnostic comment = stream.diagnostics.all().get(3);
+		stream.edit(input.indexOf('y'), 1, "z");
+		assertSame(comment, stream.diagnostics.all().get(3)); // not moved by the edit
+		stream.edit(0, 0, "\n\\");
+		String edited = "\n\\" + input.replace('#', ' ').replace('y', 'z');
+		assertEquals(scanInput(edited).diagnostics.toString(), stream.diagnostics.toString());
+		assertEquals("line 4 column 1: unterminated comment", stream.diagnostics.all().get(4).toString());
+	}
+	
+	@Test
+	public void reuseScanner(){
+		String[] inputs = { "int x = 1;\n#", "def f = {-> return \"a\";}", "", "/* open", "\r\nx\ny\r\nz" };
+		TokenStream stream = new TokenStream("first");
+		Scanner scanner = new Scanner(stream, Scanner.Engine.TABLE);
+		scanner.scan();
+		for (String input : inputs) {
+			scanner.reset(input.toCharArray());
+			scanner.scan();
+			TokenStream expected = new TokenStream(input);
+			new Scanner(expected).scan();
+			assertArrayEquals(expected.tokens.toArray(), stream.tokens.toArray());
+			assertArrayEquals(makeTokenTextArray(expected), makeTokenTextArray(stream));
+			assertEquals(expected.lines.lineCount(), stream.lines.lineCount());
+			assertEquals(expected.diagnostics.toString(), stream.diagnostics.toString());
+			assertEquals(expected.symbols.size(), stream.symbols.size());
+
+			scanner.reset(input.toCharArray());
+			scanner.scanPacked();
+			assertEquals(expected.toString(), stream.toString());
+		}
+	}
+	
+	@Test
+	public void tokenCache() throws IOException {
+		String input = "class A { def x: int; x = 12; print \"a\\nb\"; }\r\n/* c\n */ # x";
+		Path dir = Files.createTempDirectory("tokens");
+		try {
+			TokenCache cache = new TokenCache(dir);
+			TokenStream first = new TokenStream(input);
+			assertFalse(cache.scan(first));
+			TokenStream second = new TokenStream(input);
+			assertTrue(cache.scan(second));
+			TokenStream expected = scanInput(input);
+			assertArrayEquals(expected.tokens.toArray(), second.tokens.toArray());
+			assertArrayEquals(makeTokenTextArray(expected), makeTokenTextArray(second));
+			assertEquals(expected.lines.lineCount(), second.lines.lineCount());
+			assertEquals(expected.lines.lineStart(2), second.lines.lineStart(2));
+			assertEquals(expected.symbols.lookup("x"), second.symbols.lookup("x"));
+			assertEquals(expected.diagnostics.toString(), second.diagnostics.toString());
+			assertFalse(cache.scan(new TokenStream(input + " ")));
+
+			// a damaged entry is replaced
+			try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+				for (Path entry : entries) {
+					Files.write(entry, new byte[] { 1, 2, 3 });
+				}
+			}
+			assertFalse(cache.scan(new TokenStream(input)));
+			assertTrue(cache.scan(new TokenStream(input)));
+		} finally {
+			try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+				for (Path entry : entries) {
+					Files.delete(entry);
+				}
+			}
+			Files.delete(dir);
+		}
+	}
+	
 }
@@ -0,0 +1,218 @@
+package cop5555sp15;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import cop5555sp15.TokenStream.Kind;
+import cop5555sp15.TokenStream.Token;
+
+/**
+ * Keeps the scanned tokens of inputs in a cache directory, so that an input
+ * that was scanned before is not scanned again. An entry holds the kinds,
+ * offsets and line numbers of the tokens, the line starts and the identifier
+ * spellings in the order of their symbol ids. It is stored under the SHA-256
+ * hash of the input chars and read through a memory mapping.
+ *
+ * An entry begins with a header of a magic number, the format version, a
+ * signature of the names of TokenStream.Kind, the input length and the hash.
+ * An entry whose header does not match, for example because Kind changed,
+ * is ignored and replaced.
+ */
+public final class TokenCache {
+	private static final int MAGIC = 0x544F4B43; // "TOKC"
+	private static final int VERSION = 1;
+	private static final int KINDS_SIGNATURE = Arrays.toString(Kind.values()).hashCode();
+	private static final int HASH_LENGTH = 32;
+	private static final int HEADER_LENGTH = 4 * 4 + HASH_LENGTH;
+	private static final Kind[] KINDS = Kind.values();
+
+	private final Path directory;
+
+	public TokenCache(Path directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Fills in the tokens list, line index, symbol table and diagnostics of a
+	 * stream that has not been scanned yet, like Scanner.scan. If the cache
+	 * has an entry for the input they are loaded from it. Otherwise the input
+	 * is scanned and an entry is written. Returns whether the entry was found.
+	 */
+	public boolean scan(TokenStream stream) throws IOException {
+		if (stream.utf8 != null) {
+			throw new IllegalArgumentException("Only char input can be cached.");
+		}
+		if (!stream.tokens.isEmpty()) {
+			throw new IllegalStateException("The stream has been scanned already.");
+		}
+		while (stream.readMore(1 << 16)) {
+			// the key needs all of the input
+		}
+		char[] chars = stream.inputChars;
+		byte[] hash = hash(chars);
+		Path file = directory.resolve(hex(hash) + ".tok");
+		if (load(file, stream, chars.length, hash)) {
+			return true;
+		}
+		new Scanner(stream).scan();
+		store(file, stream, hash);
+		return false;
+	}
+
+	// fills in the stream from the entry in file if it is one for the input. Returns false if
+	// there is no such entry.
+	private boolean load(Path file, TokenStream stream, int length, byte[] hash) throws IOException {
+		ByteBuffer in;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} catch (NoSuchFileException e) {
+			return false;
+		}
+		try {
+			if (in.getInt() != MAGIC || in.getInt() != VERSION || in.getInt() != KINDS_SIGNATURE
+					|| in.getInt() != length) {
+				return false;
+			}
+			byte[] stored = new byte[HASH_LENGTH];
+			in.get(stored);
+			if (!Arrays.equals(stored, hash)) {
+				return false;
+			}
+			int tokenCount = in.getInt();
+			int lineCount = in.getInt();
+			int symbolCount = in.getInt();
+			if (tokenCount < 0 || lineCount < 1 || symbolCount < 0
+					|| 13L * tokenCount + 4L * (lineCount - 1) + 4L * symbolCount > in.remaining()) {
+				return false; // damaged
+			}
+			int kindsAt = in.position();
+			int begsAt = kindsAt + tokenCount;
+			int endsAt = begsAt + 4 * tokenCount;
+			int linesAt = endsAt + 4 * tokenCount;
+			in.position(linesAt + 4 * tokenCount);
+			for (int i = 1; i < lineCount; i++) {
+				stream.lines.add(in.getInt());
+			}
+			for (int i = 0; i < symbolCount; i++) {
+				int nameLength = in.getInt();
+				if (nameLength < 0 || nameLength > in.remaining()) {
+					throw new BufferUnderflowException();
+				}
+				char[] name = new char[nameLength];
+				for (int k = 0; k < name.length; k++) {
+					name[k] = (char) (in.get() & 0xFF); // identifiers are ASCII
+				}
+				stream.symbols.intern(name, 0, name.length);
+			}
+			stream.tokens.ensureCapacity(tokenCount);
+			for (int i = 0; i < tokenCount; i++) {
+				Kind kind = KINDS[in.get(kindsAt + i)];
+				int beg = in.getInt(begsAt + 4 * i);
+				int end = in.getInt(endsAt + 4 * i);
+				int line = in.getInt(linesAt + 4 * i);
+				stream.tokens.add(stream.new Token(kind, beg, end, line));
+				stream.diagnose(i, kind, beg, end, line);
+			}
+			return true;
+		} catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+			// a damaged entry. Start over with what was loaded from it forgotten.
+			stream.reset(stream.inputChars);
+			return false;
+		}
+	}
+
+	// writes the entry for the scanned stream. It is written to a temporary file first so that
+	// a concurrent load never sees half of it.
+	private void store(Path file, TokenStream stream, byte[] hash) throws IOException {
+		int tokenCount = stream.tokens.size();
+		int lineCount = stream.lines.lineCount();
+		int symbolCount = stream.symbols.size();
+		int size = HEADER_LENGTH + 3 * 4 + 13 * tokenCount + 4 * (lineCount - 1);
+		for (int i = 0; i < symbolCount; i++) {
+			size += 4 + stream.symbols.name(i).length();
+		}
+		ByteBuffer out = ByteBuffer.allocate(size);
+		out.putInt(MAGIC).putInt(VERSION).putInt(KINDS_SIGNATURE).putInt(stream.inputChars.length).put(hash);
+		out.putInt(tokenCount).putInt(lineCount).putInt(symbolCount);
+		for (Token t : stream.tokens) {
+			out.put((byte) t.kind.ordinal());
+		}
+		for (Token t : stream.tokens) {
+			out.putInt(t.getBeg());
+		}
+		for (Token t : stream.tokens) {
+			out.putInt(t.getEnd());
+		}
+		for (Token t : stream.tokens) {
+			out.putInt(t.getLineNumber());
+		}
+		for (int line = 2; line <= lineCount; line++) {
+			out.putInt(stream.lines.lineStart(line));
+		}
+		for (int i = 0; i < symbolCount; i++) {
+			String name = stream.symbols.name(i);
+			out.putInt(name.length());
+			for (int k = 0; k < name.length(); k++) {
+				out.put((byte) name.charAt(k));
+			}
+		}
+		out.flip();
+
+		Files.createDirectories(directory);
+		Path temp = Files.createTempFile(directory, "entry", ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				while (out.hasRemaining()) {
+					channel.write(out);
+				}
+			}
+			try {
+				Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	// returns the SHA-256 hash of the chars, taken in UTF-16 big endian order
+	private static byte[] hash(char[] chars) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e); // every JDK has it
+		}
+		ByteBuffer block = ByteBuffer.allocate(1 << 14);
+		CharBuffer blockChars = block.asCharBuffer();
+		for (int i = 0; i < chars.length; i += blockChars.capacity()) {
+			int n = Math.min(blockChars.capacity(), chars.length - i);
+			blockChars.clear();
+			blockChars.put(chars, i, n);
+			block.clear().limit(2 * n);
+			digest.update(block);
+		}
+		return digest.digest();
+	}
+
+	private static String hex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder(2 * bytes.length);
+		for (byte b : bytes) {
+			sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return sb.toString();
+	}
+}
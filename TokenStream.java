@@ -2,7 +2,21 @@ package cop5555sp15;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import cop5555sp15.Diagnostics.Diagnostic;
 
 /**
  * This class holds the tokenize input. It is initialized with the input
@@ -14,18 +28,46 @@ import java.util.ArrayList;
  *
  */
 public class TokenStream {
-	char[] inputChars; // input
+	char[] inputChars; // input, null for UTF-8 input. Has room for more while a Reader is streamed in.
+	Utf8Input utf8; // UTF-8 input scanned as bytes, see fromUtf8, or null
 	public final ArrayList<Token> tokens = new ArrayList<Token>(); // holds tokens after scan
+	public final SymbolTable symbols = new SymbolTable(); // spellings of the identifiers
+	public final LineIndex lines = new LineIndex(); // line starts, recorded by the scanner
+	public final Diagnostics diagnostics = new Diagnostics(); // scanning errors, recorded by the scanner
 																	
 
 	/* provide input in char array */
 	public TokenStream(char[] inputChars) {
 		this.inputChars = inputChars;
+		this.utf8 = null;
 	}
 
 	/* provide input via a Reader */
 	public TokenStream(Reader r) {
-		this.inputChars = getChars(r);
+		this(r, -1);
+	}
+
+	/*
+	 * provide input via a Reader, with the expected number of chars, such as
+	 * the file size, or -1 if it is not known. The Reader is read to its end
+	 * in blocks.
+	 */
+	public TokenStream(Reader r, int lengthHint) {
+		this.inputChars = getChars(r, lengthHint);
+		this.utf8 = null;
+	}
+
+	/*
+	 * provide input via a Reader that is read while the input is scanned,
+	 * whenever the scanner needs chars that have not been read yet. With
+	 * Scanner.scanLazily the parser can then work on the first tokens of a
+	 * slow Reader, like a pipe, while the rest is still arriving.
+	 */
+	public static TokenStream streaming(Reader r) {
+		TokenStream stream = new TokenStream(new char[BLOCK_SIZE]);
+		stream.pending = r;
+		stream.available = 0;
+		return stream;
 	}
 
 	/* provide input via a String */
@@ -33,41 +75,412 @@ public class TokenStream {
 		int length = inputString.length();
 		inputChars = new char[length];
 		inputString.getChars(0, length, inputChars, 0);
+		this.utf8 = null;
 	}
 
-	// reads all the characters in the given reader into a char array.
-	private char[] getChars(Reader r) {
-		StringBuilder sb = new StringBuilder();
+	private TokenStream(Utf8Input utf8) {
+		this.inputChars = null;
+		this.utf8 = utf8;
+	}
+
+	// The unit in which the token offsets of UTF-8 input are counted
+	public static enum OffsetUnit {
+		BYTES,	// offsets into the bytes
+		CHARS	// offsets into the decoded chars, as for the other inputs
+	}
+
+	/*
+	 * provide input as UTF-8 bytes, from the position to the limit of the
+	 * buffer. The bytes are scanned as they are and only decoded by
+	 * Token.getText. The buffer must not change while the stream is used.
+	 */
+	public static TokenStream fromUtf8(ByteBuffer bytes, OffsetUnit unit) {
+		return new TokenStream(new Utf8Input(bytes, unit == OffsetUnit.CHARS));
+	}
+
+	public static TokenStream fromUtf8(byte[] bytes, OffsetUnit unit) {
+		return fromUtf8(ByteBuffer.wrap(bytes), unit);
+	}
+
+	/* provide input via a UTF-8 file that is memory mapped and scanned as bytes */
+	public static TokenStream mapUtf8File(Path path, OffsetUnit unit) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return fromUtf8(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), unit);
+		}
+	}
+
+	/*
+	 * provide input via a UTF-8 file. The file is memory mapped and decoded
+	 * straight from the mapped pages into the input array.
+	 */
+	public static TokenStream fromFile(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return new TokenStream(decode(bytes));
+		}
+	}
+
+	// decodes UTF-8 bytes into a char array. ASCII is widened byte by byte and
+	// only the rest of the input after the first non-ASCII byte goes through a decoder.
+	static char[] decode(ByteBuffer bytes) {
+		int base = bytes.position();
+		int length = bytes.remaining();
+		char[] chars = new char[length]; // UTF-8 never decodes to more chars than bytes
+		int i = 0;
+		while (i < length) {
+			byte b = bytes.get(base + i);
+			if (b < 0) {
+				break;
+			}
+			chars[i++] = (char) b;
+		}
+		if (i == length) {
+			return chars;
+		}
+		CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		ByteBuffer rest = bytes.duplicate();
+		rest.position(base + i);
+		CharBuffer out = CharBuffer.wrap(chars, i, length - i);
+		decoder.decode(rest, out, true);
+		decoder.flush(out);
+		return Arrays.copyOf(chars, out.position());
+	}
+
+	private static final int BLOCK_SIZE = 8192; // chars read at once from a Reader
+	private static final int MAX_HINT = 1 << 26; // larger length hints are not trusted
+	private static final int MAX_ARRAY = Integer.MAX_VALUE - 8; // the largest array VMs reliably allocate
+
+	// reads all the characters in the given reader into a char array. The array starts out
+	// one char larger than the hint, so that the end of input is found without growing it.
+	// Above MAX_HINT the hint is ignored and the array grows from BLOCK_SIZE.
+	private char[] getChars(Reader r, int lengthHint) {
+		char[] chars = new char[lengthHint >= 0 && lengthHint <= MAX_HINT ? lengthHint + 1 : BLOCK_SIZE];
+		int length = 0;
 		try {
-			int ch = r.read();
-			while (ch != -1) {
-				sb.append((char) ch);
-				ch = r.read();
+			int n;
+			while ((n = r.read(chars, length, chars.length - length)) != -1) {
+				length += n;
+				if (length == chars.length) {
+					if (length == MAX_ARRAY) {
+						throw new OutOfMemoryError("The input is longer than " + MAX_ARRAY + " chars");
+					}
+					chars = Arrays.copyOf(chars, (int) Math.min(Math.max(2L * length, BLOCK_SIZE), MAX_ARRAY));
+				}
 			}
 		} catch (IOException e) {
-			throw new RuntimeException("IOException");
+			throw new UncheckedIOException("Could not read the input after " + length + " chars", e);
 		}
-		char[] chars = new char[sb.length()];
-		sb.getChars(0, sb.length(), chars, 0);
-		return chars;
+		return length == chars.length ? chars : Arrays.copyOf(chars, length);
+	}
+
+	private Reader pending; // the Reader of a streaming stream, null once it is exhausted
+	private int available; // number of chars in inputChars that have been read, while pending
+
+	/*
+	 * reads more chars from the Reader of a streaming stream, at least
+	 * atLeast chars unless the Reader ends first. Returns false if there was
+	 * nothing more to read. inputChars is replaced if it has to grow, and
+	 * trimmed to the input once the Reader is exhausted.
+	 */
+	boolean readMore(int atLeast) throws IOException {
+		if (pending == null) {
+			return false;
+		}
+		int read = 0;
+		do {
+			if (available == inputChars.length) {
+				if (available == MAX_ARRAY) {
+					throw new OutOfMemoryError("The input is longer than " + MAX_ARRAY + " chars");
+				}
+				inputChars = Arrays.copyOf(inputChars, (int) Math.min(2L * available, MAX_ARRAY));
+			}
+			int n = pending.read(inputChars, available, inputChars.length - available);
+			if (n == -1) {
+				pending = null;
+				inputChars = Arrays.copyOf(inputChars, available);
+				break;
+			}
+			available += n;
+			read += n;
+		} while (read < atLeast);
+		return read > 0;
+	}
+
+	/* returns whether all of the input has been read */
+	boolean isComplete() {
+		return pending == null;
 	}
 
 	private int pos = 0;
+	int editedFrom, editedTo; // indexes of the tokens rescanned by the last edit
+	int editedRemoved; // number of old tokens that the last edit replaced by them
+
+	// The edits so far, which move the tokens after them, see Token.getBeg. Edit i moved the
+	// tokens that began at editTail[i] or later by editShift[i] chars and editLineShift[i] lines.
+	private int edits;
+	private int[] editTail = new int[16];
+	private int[] editShift = new int[16];
+	private int[] editLineShift = new int[16];
+	private Scanner source; // non-null in lazy mode, see Scanner.scanLazily
+	private PackedTokens packed; // non-null in packed mode, see Scanner.scanPacked
+	private PackedTokens spare; // the packed store of an input before the last reset, for reuse
+	private String[] texts; // values of STRING_LIT tokens by token index, allocated by the first getText of one
+
+	/* attaches a scanner that nextToken pulls tokens from on demand */
+	void setSource(Scanner source) {
+		this.source = source;
+	}
+
+	/* replaces the tokens list by a packed token store */
+	void setPacked(PackedTokens packed) {
+		this.packed = packed;
+	}
+
+	/* returns an empty packed store, the one used before the last reset if there is one */
+	PackedTokens newPacked(int capacity) {
+		PackedTokens store = spare;
+		if (store == null) {
+			return new PackedTokens(capacity, lines);
+		}
+		spare = null;
+		store.clear();
+		return store;
+	}
+
+	/**
+	 * Replaces the input by a new one and forgets all that was scanned from the
+	 * old one, so that the stream can be used again, usually through
+	 * Scanner.reset. The tokens list, the packed store, the symbol table and the
+	 * line index keep the space they have grown to, so scanning many small
+	 * inputs with the same stream hardly allocates. Tokens of the old input must
+	 * not be used any more.
+	 */
+	public void reset(char[] input) {
+		inputChars = input;
+		utf8 = null;
+		pending = null;
+		available = 0;
+		tokens.clear();
+		symbols.clear();
+		lines.clear();
+		diagnostics.clear();
+		texts = null;
+		edits = 0;
+		pos = 0;
+		source = null;
+		if (packed != null) {
+			spare = packed;
+			packed = null;
+		}
+	}
 
-	/** returns the next token and increments the position */
+	/*
+	 * Index based access to the scanned tokens. These work on the tokens list
+	 * and on the packed store alike, and do not create Token objects.
+	 */
+	public int tokenCount() {
+		return packed != null ? packed.size() : tokens.size();
+	}
+
+	public Kind kindAt(int i) {
+		return packed != null ? packed.kind(i) : tokens.get(i).kind;
+	}
+
+	public int begAt(int i) {
+		return packed != null ? packed.beg(i) : tokens.get(i).getBeg();
+	}
+
+	public int endAt(int i) {
+		return packed != null ? packed.end(i) : tokens.get(i).getEnd();
+	}
+
+	public int lineAt(int i) {
+		return packed != null ? packed.line(i) : tokens.get(i).getLineNumber();
+	}
+
+	/** returns the i-th token. In packed mode a new Token view is created. */
+	public Token tokenAt(int i) {
+		if (packed == null) {
+			return tokens.get(i);
+		}
+		Objects.checkIndex(i, packed.size());
+		return new Token(packed.kind(i), packed.beg(i), packed.end(i), packed.line(i));
+	}
+
+	/**
+	 * returns the next token and increments the position. In lazy mode the
+	 * token is scanned on demand and is not kept in the tokens list.
+	 */
 	public Token nextToken() {
-		return tokens.get(pos++);
+		if (source != null) {
+			return source.pull();
+		}
+		return tokenAt(pos++);
 	}
 
 	/** resets the position in the token stream */
 	public void reset() {
 		pos = 0;
+		if (source != null) {
+			source.rewind();
+		}
+	}
+
+	/**
+	 * Replaces deletedLength chars at offset by insertedText and updates the
+	 * tokens list filled in by Scanner.scan. Tokens that end before the edit are
+	 * kept. Scanning restarts after the last of them and stops as soon as a new
+	 * token begins where an old token after the edit began, since from there on
+	 * the old tokens are still valid. They are kept as they are and the edit is
+	 * recorded, so that getBeg, getEnd and getLineNumber of a Token held
+	 * elsewhere, for example in an AST, give its new position unless it was
+	 * rescanned. The rescanning work depends on the size of the edit, but
+	 * copying the input and the tokens list is still linear. The rescanned
+	 * tokens are left at the indexes editedFrom up to editedTo, in place of
+	 * editedRemoved old tokens.
+	 */
+	public void edit(int offset, int deletedLength, String insertedText) {
+		if (utf8 != null) {
+			throw new IllegalStateException("UTF-8 input cannot be edited.");
+		}
+		if (pending != null) {
+			throw new IllegalStateException("Input that is still being read cannot be edited.");
+		}
+		if (offset < 0 || deletedLength < 0 || offset + deletedLength > inputChars.length) {
+			throw new IndexOutOfBoundsException("Edit of " + deletedLength + " chars at " + offset
+					+ " is outside the input of length " + inputChars.length);
+		}
+		if (source != null || packed != null) {
+			throw new IllegalStateException("Only a token list filled in by Scanner.scan can be edited.");
+		}
+		int insertedLength = insertedText.length();
+		int oldTailBeg = offset + deletedLength;
+		char[] chars = new char[inputChars.length - deletedLength + insertedLength];
+		System.arraycopy(inputChars, 0, chars, 0, offset);
+		insertedText.getChars(0, insertedLength, chars, offset);
+		System.arraycopy(inputChars, oldTailBeg, chars, offset + insertedLength, inputChars.length - oldTailBeg);
+		inputChars = chars;
+		if (tokens.isEmpty()) {
+			editedFrom = editedTo = editedRemoved = 0;
+			lines.truncate(0);
+			diagnostics.clear();
+			return;
+		}
+
+		// tokens ending before the edit never looked at the edited chars
+		int keep = 0;
+		int high = tokens.size();
+		while (keep < high) {
+			int mid = (keep + high) >>> 1;
+			if (tokens.get(mid).getEnd() < offset) {
+				keep = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		int restart = keep == 0 ? 0 : tokens.get(keep - 1).getEnd();
+		int line = keep == 0 ? 1 : tokens.get(keep - 1).getLineNumber();
+
+		int[] oldStarts = lines.truncate(restart);
+		int shift = insertedLength - deletedLength;
+		int editEnd = offset + insertedLength;
+		ScanEngine engine = new Scanner(this);
+		engine.restartAt(restart, line);
+		List<Token> rescanned = new ArrayList<Token>();
+		int resume = tokens.size(); // first old token that is still valid
+		int lineShift = 0;
+		Kind kind = engine.scanNext();
+		while (kind != null) {
+			int beg = engine.tokenBeg();
+			if (beg >= editEnd) {
+				int old = indexOfBeg(beg - shift, keep);
+				if (old >= 0) {
+					resume = old;
+					lineShift = engine.tokenLine() - tokens.get(old).getLineNumber();
+					break;
+				}
+			}
+			rescanned.add(new Token(kind, beg, engine.tokenEnd(), engine.tokenLine(), edits + 1));
+			kind = engine.scanNext();
+		}
+
+		if (resume < tokens.size()) {
+			// lines after the first old token that is still valid were not rescanned
+			int oldResumeBeg = tokens.get(resume).getBeg();
+			for (int start : oldStarts) {
+				if (start > oldResumeBeg) {
+					lines.add(start + shift);
+				}
+			}
+		}
+		if (edits == editTail.length) {
+			editTail = Arrays.copyOf(editTail, 2 * edits);
+			editShift = Arrays.copyOf(editShift, 2 * edits);
+			editLineShift = Arrays.copyOf(editLineShift, 2 * edits);
+		}
+		editTail[edits] = oldTailBeg;
+		editShift[edits] = shift;
+		editLineShift[edits] = lineShift;
+		edits++;
+		if (texts != null) {
+			String[] moved = new String[texts.length - (resume - keep) + rescanned.size()];
+			System.arraycopy(texts, 0, moved, 0, keep);
+			System.arraycopy(texts, resume, moved, keep + rescanned.size(), texts.length - resume);
+			texts = moved;
+		}
+		tokens.subList(keep, resume).clear();
+		tokens.addAll(keep, rescanned);
+		editedRemoved = resume - keep;
+		editedFrom = keep;
+		editedTo = keep + rescanned.size();
+		List<Diagnostic> found = new ArrayList<Diagnostic>();
+		for (int i = editedFrom; i < editedTo; i++) {
+			Token t = tokens.get(i);
+			Diagnostic d = diagnostic(i, t.kind, t.beg, t.end, t.lineNumber);
+			if (d != null) {
+				found.add(d);
+			}
+		}
+		diagnostics.splice(keep, resume, found, editedTo - resume, shift, lineShift, lines);
+	}
+
+	/*
+	 * returns the index of the token in the tokens list or the packed store, or -1 if it is in
+	 * neither, as in lazy mode or after an edit rescanned it. A view of the packed store is at
+	 * the index it was made for.
+	 */
+	int indexOf(Token token) {
+		int i = indexOfBeg(token.getBeg(), 0);
+		if (i < 0) {
+			return -1;
+		}
+		return (packed != null ? packed.kind(i) == token.kind : tokens.get(i) == token) ? i : -1;
+	}
+
+	// returns the index of the token from index from on that begins at beg, or -1
+	private int indexOfBeg(int beg, int from) {
+		int low = from;
+		int high = tokenCount() - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int midBeg = begAt(mid);
+			if (midBeg < beg) {
+				low = mid + 1;
+			} else if (midBeg > beg) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
 	}
 
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
-		for (Token t : tokens) {
-			sb.append(t.toString());
+		for (int i = 0; i < tokenCount(); i++) {
+			sb.append(tokenAt(i).toString());
 			sb.append('\n');
 		}
 		return sb.toString();
@@ -124,6 +537,112 @@ public class TokenStream {
 		UNTERMINATED_COMMENT  //end of input is reached before the closing */
 	}
 
+	// returns the length of the input read so far, or for UTF-8 input an upper bound of the offsets
+	int inputLength() {
+		return utf8 != null ? utf8.length : pending != null ? available : inputChars.length;
+	}
+
+	// parses the digits in the input between offsets beg and end without creating a String.
+	// Throws a NumberFormatException like Integer.valueOf if they do not fit into an int.
+	int parseInt(int beg, int end) {
+		int value = digitsValue(beg, end);
+		if (value < 0) {
+			String digits = utf8 != null ? utf8.text(beg, end) : String.valueOf(inputChars, beg, end - beg);
+			throw new NumberFormatException("For input string: \"" + digits + "\"");
+		}
+		return value;
+	}
+
+	// returns the value of the digits between offsets beg and end, or -1 if they do not fit into an int
+	private int digitsValue(int beg, int end) {
+		int from = utf8 != null ? utf8.byteOffset(beg) : beg; // digits are ASCII, one byte each
+		int value = 0;
+		for (int i = from; i < from + end - beg; i++) {
+			int digit = (utf8 != null ? utf8.get(i) : inputChars[i]) - '0';
+			if (digit < 0 || digit > 9 || value > (Integer.MAX_VALUE - digit) / 10) {
+				return -1;
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	// records a diagnostic if the scanned token at index is an error token or an int literal
+	// that does not fit into an int
+	void diagnose(int index, Kind kind, int beg, int end, int line) {
+		Diagnostic d = diagnostic(index, kind, beg, end, line);
+		if (d != null) {
+			diagnostics.add(d);
+		}
+	}
+
+	// returns the diagnostic for the scanned token at index, or null if it is correct. Int
+	// literals of up to 9 digits always fit and are not looked at.
+	private Diagnostic diagnostic(int index, Kind kind, int beg, int end, int line) {
+		if (kind.compareTo(Kind.ILLEGAL_CHAR) >= 0
+				|| kind == Kind.INT_LIT && end - beg > 9 && digitsValue(beg, end) < 0) {
+			return new Diagnostic(kind, index, beg, end, line, lines.column(beg));
+		}
+		return null;
+	}
+
+	// returns the value of a STRING_LIT token. It is decoded once for each index in the tokens
+	// list or packed store, and every time for a token that is in neither.
+	private String stringLitValue(Token token) {
+		int i = indexOf(token);
+		if (i < 0) {
+			return token.decodeStringLit();
+		}
+		String[] values = texts;
+		if (values == null) {
+			values = texts = new String[tokenCount()];
+		}
+		String value = values[i];
+		if (value == null) {
+			value = values[i] = token.decodeStringLit();
+		}
+		return value;
+	}
+
+	/* where a token is after some edits, see Token.getBeg */
+	private static final class Position {
+		final int edits; // the number of edits it is after
+		final int beg;
+		final int end;
+		final int lineNumber;
+
+		Position(int edits, int beg, int end, int lineNumber) {
+			this.edits = edits;
+			this.beg = beg;
+			this.end = end;
+			this.lineNumber = lineNumber;
+		}
+	}
+
+	// returns p moved by the edits after the first p.edits of them
+	private Position move(Position p) {
+		int beg = p.beg;
+		int end = p.end;
+		int line = p.lineNumber;
+		for (int i = p.edits; i < edits; i++) {
+			if (beg >= editTail[i]) {
+				beg += editShift[i];
+				end += editShift[i];
+				line += editLineShift[i];
+			}
+		}
+		return new Position(edits, beg, end, line);
+	}
+
+	// returns the symbol id of the identifier between offsets beg and end
+	int intern(int beg, int end) {
+		if (utf8 != null) {
+			int from = utf8.byteOffset(beg); // identifiers are ASCII
+			return symbols.intern(utf8.bytes, from, from + end - beg);
+		}
+		return symbols.intern(inputChars, beg, end);
+	}
+
 	/*
 	 * This is a non-static inner class. Each instance is linked to a instance
 	 * of StreamToken and can access that instance's variables.
@@ -134,21 +653,54 @@ public class TokenStream {
 
 	public class Token {
 		public final Kind kind;
-		public final int beg;
+		public final int beg; // where the token was scanned. After an edit use getBeg, getEnd and getLineNumber.
 		public final int end;
 		public final int lineNumber;
+		int symbol = -1; // id in symbols for IDENT tokens, -1 until it is interned
+		private final int scannedEdits; // number of edits of the stream before the token was scanned
+		private Position moved; // where the edits since then have moved it, null until it is asked for
 
 		public Token(Kind kind, int beg, int end, int lineNumber) {
+			this(kind, beg, end, lineNumber, edits);
+		}
+
+		private Token(Kind kind, int beg, int end, int lineNumber, int scannedEdits) {
 			this.kind = kind;
 			this.beg = beg;
 			this.end = end;
 			this.lineNumber = lineNumber;
+			this.scannedEdits = scannedEdits;
+		}
+
+		/*
+		 * The position of the token in the input as it is now. It differs from
+		 * beg, end and lineNumber once an edit before the token has changed the
+		 * length of the input or its line count. Position has only final fields,
+		 * so threads that bring moved up to date at the same time are safe.
+		 */
+		private Position position() {
+			Position p = moved;
+			if (p == null) {
+				p = new Position(scannedEdits, beg, end, lineNumber);
+			}
+			if (p.edits != edits) {
+				p = moved = move(p);
+			}
+			return p;
+		}
+
+		public int getBeg() {
+			return scannedEdits == edits ? beg : position().beg;
+		}
+
+		public int getEnd() {
+			return scannedEdits == edits ? end : position().end;
 		}
 
 		/* this should only be applied to Tokens with kind==INT_LIT */
 		public int getIntVal() {
 			assert kind == Kind.INT_LIT : "attempted to get value of non-number token";
-			return Integer.valueOf(getText());
+			return parseInt(getBeg(), getEnd());
 		}
 
 		/* this should only be applied to Tokens with kind==BOOLEAN_LIT */
@@ -158,7 +710,21 @@ public class TokenStream {
 		}
 
 		public int getLineNumber() {
-			return lineNumber;
+			return scannedEdits == edits ? lineNumber : position().lineNumber;
+		}
+
+		/* returns the column, counting from 1, at which the token begins on its line */
+		public int getColumn() {
+			return lines.column(getBeg());
+		}
+
+		/* this should only be applied to Tokens with kind==IDENT */
+		public int getSymbol() {
+			assert kind == Kind.IDENT : "attempted to get symbol of non-identifier token";
+			if (symbol < 0) {
+				symbol = intern(getBeg(), getEnd());
+			}
+			return symbol;
 		}
 
 		/**This method handles the escape characters in String literals.  The
@@ -168,42 +734,75 @@ public class TokenStream {
 		 * @return
 		 */
 		public String getText() {
-			if (inputChars.length < end) {
+			int beg = getBeg();
+			int end = getEnd();
+			if (utf8 == null && inputChars.length < end) {
 				assert kind == Kind.EOF && beg == inputChars.length;
 				return "";
 			}
 			if (kind == Kind.STRING_LIT) {
-				StringBuilder sb = new StringBuilder();
-				for (int i = beg+1; i < end-1; ++i) {
-					char ch = inputChars[i];
-					if (ch == '\\') {
-						char nextChar = inputChars[i+1];
-						if (nextChar == '"') {
-							sb.append('"');
-							i++;
-						} else if (nextChar == 'n')  {
-							sb.append('\n');
-							i++;
-						} else if (nextChar == 'r') {
-							sb.append('\r');
-							i++;
-						} else if (nextChar == '\\') {
-								sb.append('\\');
-								i++;
-						}
-					} else {
-						sb.append(ch);
-					}	
-				}
-				return sb.toString();
+				return stringLitValue(this);
+			}
+			if (kind == Kind.IDENT) {
+				return symbols.name(getSymbol());
+			}
+			if (utf8 != null) {
+				return utf8.text(beg, end);
 			}
 			return String.valueOf(inputChars, beg, end - beg);
 		}
 
+		// returns the value of a string literal without the quotes and with escapes replaced
+		private String decodeStringLit() {
+			int beg = getBeg();
+			int end = getEnd();
+			if (utf8 != null) {
+				char[] chars = utf8.text(beg + 1, end).toCharArray(); // with the closing quote, see unescape
+				return unescape(chars, 0, chars.length - 1);
+			}
+			return unescape(inputChars, beg + 1, end - 1);
+		}
+
+		// replaces the escapes in chars[from..to). Text without a backslash is copied as it is.
+		// A backslash at the end escapes chars[to], so it must be readable.
+		private String unescape(char[] chars, int from, int to) {
+			int i = from;
+			while (i < to && chars[i] != '\\') {
+				i++;
+			}
+			if (i >= to) {
+				return String.valueOf(chars, from, to - from);
+			}
+			StringBuilder sb = new StringBuilder(to - from);
+			sb.append(chars, from, i - from);
+			for (; i < to; ++i) {
+				char ch = chars[i];
+				if (ch == '\\') {
+					char nextChar = chars[i+1];
+					if (nextChar == '"') {
+						sb.append('"');
+						i++;
+					} else if (nextChar == 'n')  {
+						sb.append('\n');
+						i++;
+					} else if (nextChar == 'r') {
+						sb.append('\r');
+						i++;
+					} else if (nextChar == '\\') {
+							sb.append('\\');
+							i++;
+					}
+				} else {
+					sb.append(ch);
+				}	
+			}
+			return sb.toString();
+		}
+
 		public String toString() {
 			return (new StringBuilder("<").append(kind).append(",")
-					.append(getText()).append(",").append(beg).append(",")
-					.append(end).append(",").append(lineNumber).append(">"))
+					.append(getText()).append(",").append(getBeg()).append(",")
+					.append(getEnd()).append(",").append(getLineNumber()).append(">"))
 					.toString();
 		}
 
@@ -211,8 +810,8 @@ public class TokenStream {
 			if (!(o instanceof Token))
 				return false;
 			Token other = (Token) o;
-			return kind == other.kind && beg == other.beg && end == other.end
-					&& lineNumber == other.lineNumber;
+			return kind == other.kind && getBeg() == other.getBeg() && getEnd() == other.getEnd()
+					&& getLineNumber() == other.getLineNumber();
 		}
 	}
 }
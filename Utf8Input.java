@@ -0,0 +1,125 @@
+package cop5555sp15;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * UTF-8 encoded input of a TokenStream, scanned by Utf8Scanner without
+ * decoding it into chars first. Token offsets count bytes, or chars if the
+ * stream was created with char offsets. In that case the scanner records
+ * where each non-ASCII sequence begins, so that the bytes of a token can
+ * still be found from its char offsets. Text is only decoded when it is asked
+ * for.
+ *
+ * The input should be well formed UTF-8. A byte that does not begin a well
+ * formed sequence is taken as a single char.
+ */
+final class Utf8Input {
+	final ByteBuffer bytes; // indexed from 0
+	final int length; // in bytes
+	final boolean charOffsets;
+	private int[] seqChars = new int[16]; // char offset of each non-ASCII sequence, in char offset mode
+	private int[] seqBytes = new int[16]; // its byte offset
+	private int seqCount;
+
+	Utf8Input(ByteBuffer bytes, boolean charOffsets) {
+		this.bytes = bytes.slice();
+		this.length = this.bytes.remaining();
+		this.charOffsets = charOffsets;
+	}
+
+	byte get(int i) {
+		return bytes.get(i);
+	}
+
+	// returns the number of bytes in the sequence that begins at i. A byte that
+	// does not begin a well formed sequence is a sequence of its own.
+	int sequenceLength(int i) {
+		int lead = bytes.get(i) & 0xFF;
+		int n = lead < 0xC0 ? 1 : lead < 0xE0 ? 2 : lead < 0xF0 ? 3 : lead < 0xF8 ? 4 : 1;
+		if (i + n > length) {
+			return 1;
+		}
+		for (int k = 1; k < n; k++) {
+			if ((bytes.get(i + k) & 0xC0) != 0x80) {
+				return 1;
+			}
+		}
+		return n;
+	}
+
+	// returns the code point of the sequence of n bytes at i, U+FFFD if it is malformed
+	int codePoint(int i, int n) {
+		int lead = bytes.get(i) & 0xFF;
+		if (n == 1) {
+			return lead < 0x80 ? lead : 0xFFFD;
+		}
+		int cp = lead & (0x7F >> n);
+		for (int k = 1; k < n; k++) {
+			cp = (cp << 6) | (bytes.get(i + k) & 0x3F);
+		}
+		return cp;
+	}
+
+	// returns the number of chars that the sequence of n bytes stands for
+	static int charCount(int n) {
+		return n == 4 ? 2 : 1;
+	}
+
+	/* records that a non-ASCII sequence begins at char offset c and byte offset b. Known ones are ignored. */
+	void addSequence(int c, int b) {
+		if (seqCount > 0 && b <= seqBytes[seqCount - 1]) {
+			return;
+		}
+		if (seqCount == seqChars.length) {
+			seqChars = Arrays.copyOf(seqChars, seqCount * 2);
+			seqBytes = Arrays.copyOf(seqBytes, seqCount * 2);
+		}
+		seqChars[seqCount] = c;
+		seqBytes[seqCount] = b;
+		seqCount++;
+	}
+
+	/*
+	 * returns the byte offset of the given token offset. An offset between the
+	 * two chars of a supplementary code point gives ~b, where b is the offset of
+	 * its sequence. Char offsets must lie in input that has been scanned.
+	 */
+	int byteOffset(int offset) {
+		if (!charOffsets) {
+			return offset;
+		}
+		int k = Arrays.binarySearch(seqChars, 0, seqCount, offset);
+		if (k >= 0) {
+			return seqBytes[k];
+		}
+		k = -k - 2; // the last sequence before offset
+		if (k < 0) {
+			return offset;
+		}
+		int n = sequenceLength(seqBytes[k]);
+		int after = offset - seqChars[k] - charCount(n); // ASCII chars between the sequence and offset
+		return after < 0 ? ~seqBytes[k] : seqBytes[k] + n + after;
+	}
+
+	// decodes the text between the given token offsets
+	String text(int beg, int end) {
+		int from = byteOffset(beg);
+		int to = byteOffset(end);
+		if (from >= 0 && to >= 0) {
+			return decode(from, to);
+		}
+		// an ILLEGAL_CHAR token for one half of a surrogate pair, see Utf8Scanner
+		String s = decode(from < 0 ? ~from : from, to < 0 ? ~to + 4 : to);
+		return s.substring(from < 0 ? 1 : 0, to < 0 ? s.length() - 1 : s.length());
+	}
+
+	private String decode(int from, int to) {
+		byte[] b = new byte[to - from];
+		ByteBuffer src = bytes.duplicate();
+		src.position(from);
+		src.get(b);
+		return new String(b, StandardCharsets.UTF_8);
+	}
+}
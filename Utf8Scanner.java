@@ -0,0 +1,149 @@
+package cop5555sp15;
+
+import static cop5555sp15.TokenStream.Kind.*;
+
+import cop5555sp15.TokenStream.Kind;
+
+/**
+ * Scan engine for UTF-8 input that works on the bytes, see
+ * TokenStream.fromUtf8. All tokens of the language are ASCII, so bytes are
+ * classified one at a time with the char classes and transitions of
+ * TableScanner. A non-ASCII sequence is stepped over as a whole and only
+ * decoded where a token may begin, to tell whitespace from an illegal char.
+ * Inside comments and string literals it is never decoded.
+ *
+ * With char offsets the tokens are exactly those of Scanner on the decoded
+ * input. A code point outside the BMP that is not in a comment or a string
+ * literal is then two ILLEGAL_CHAR tokens, one for each surrogate. With byte
+ * offsets it is a single ILLEGAL_CHAR token, and lines and columns count
+ * bytes too.
+ */
+final class Utf8Scanner implements ScanEngine {
+	private static final Kind[] KINDS = Kind.values();
+
+	private final Utf8Input input;
+	private final LineIndex lines;
+	private final boolean charOffsets;
+	private final char[] spelling = new char[8]; // an identifier that may be a reserved word
+	private int index; // byte offset of the next byte
+	private int charIndex; // char offset of the next byte, in char offset mode
+	private int lineNum;
+	private Kind lastKind;
+	private boolean lowSurrogate; // the token for the second half of a code point is still due
+	private int tokenBeg;
+	private int tokenEnd;
+	private int tokenLine;
+
+	Utf8Scanner(Utf8Input input, LineIndex lines) {
+		this.input = input;
+		this.lines = lines;
+		this.charOffsets = input.charOffsets;
+		restartAt(0, 1);
+	}
+
+	@Override
+	public Kind scanNext() {
+		if (lastKind == EOF) {
+			return null;
+		}
+		if (lowSurrogate) {
+			lowSurrogate = false;
+			tokenBeg = tokenEnd;
+			tokenEnd++;
+			return ILLEGAL_CHAR;
+		}
+		final Utf8Input in = input;
+		final int length = in.length;
+		while (true) {
+			int beg = index;
+			int charBeg = charIndex;
+			int state = TableScanner.START;
+			int i = index;
+			int c = charIndex;
+			while (i < length) {
+				byte b = in.get(i);
+				if (b >= 0) {
+					int next = TableScanner.transition(state, TableScanner.charClass((char) b));
+					if (next < 0) {
+						break;
+					}
+					state = next;
+					i++;
+					c++;
+				} else {
+					int n = in.sequenceLength(i);
+					int charClass = state == TableScanner.START && Character.isWhitespace(in.codePoint(i, n))
+							? TableScanner.SPACE : TableScanner.OTHER;
+					int next = TableScanner.transition(state, charClass);
+					if (next < 0) {
+						break;
+					}
+					if (charOffsets) {
+						in.addSequence(c, i);
+					}
+					state = next;
+					i += n;
+					c += Utf8Input.charCount(n);
+				}
+			}
+			index = i;
+			charIndex = c;
+			int end = charOffsets ? c : i;
+			int action = TableScanner.action(state);
+			if (action == TableScanner.SKIP) {
+				continue;
+			}
+			if (action == TableScanner.NEWLINE) {
+				lineNum++;
+				lines.add(end);
+				continue;
+			}
+			Kind kind = action == TableScanner.KEYWORD ? keyword(beg, i) : KINDS[action];
+			lastKind = kind;
+			tokenBeg = charOffsets ? charBeg : beg;
+			tokenEnd = end;
+			tokenLine = lineNum;
+			if (charOffsets && kind == ILLEGAL_CHAR && end - tokenBeg == 2) {
+				tokenEnd = tokenBeg + 1; // a surrogate pair, as in Scanner
+				lowSurrogate = true;
+			}
+			return kind;
+		}
+	}
+
+	// returns the kind of the identifier in bytes [beg, end), which are ASCII
+	private Kind keyword(int beg, int end) {
+		int length = end - beg;
+		if (length > spelling.length) {
+			return IDENT; // longer than any reserved word
+		}
+		for (int k = 0; k < length; k++) {
+			spelling[k] = (char) input.get(beg + k);
+		}
+		return Scanner.checkKeyword(spelling, 0, length);
+	}
+
+	@Override
+	public int tokenBeg() {
+		return tokenBeg;
+	}
+
+	@Override
+	public int tokenEnd() {
+		return tokenEnd;
+	}
+
+	@Override
+	public int tokenLine() {
+		return tokenLine;
+	}
+
+	@Override
+	public void restartAt(int index, int lineNum) {
+		this.index = input.byteOffset(index);
+		this.charIndex = index;
+		this.lineNum = lineNum;
+		lastKind = null;
+		lowSurrogate = false;
+	}
+}
@@ -52,5 +52,6 @@ public interface ASTVisitor {
 			Object arg)throws Exception;
 	Object visitWhileStatement(WhileStatement whileStatement, Object arg)throws Exception;
 	Object visitUndeclaredType(UndeclaredType undeclaredType, Object arg)throws Exception;
+	Object visitErrorStatement(ErrorStatement errorStatement, Object arg)throws Exception;
 
 }
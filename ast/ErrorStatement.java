@@ -0,0 +1,19 @@
+package cop5555sp15.ast;
+
+import cop5555sp15.TokenStream.Token;
+
+/* stands in a partial AST for a statement or declaration with a syntax error */
+public class ErrorStatement extends Statement {
+	public Token errorToken; // the token the error was found at
+
+	public ErrorStatement(Token firstToken, Token errorToken) {
+		super(firstToken);
+		this.errorToken = errorToken;
+	}
+
+	@Override
+	public Object visit(ASTVisitor v, Object arg) throws Exception {
+		return v.visitErrorStatement(this, arg);
+	}
+
+}
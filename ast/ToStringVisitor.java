@@ -372,4 +372,11 @@ public class ToStringVisitor implements ASTVisitor {
 		return null;
 	}
 
+	@Override
+	public Object visitErrorStatement(ErrorStatement errorStatement, Object arg)
+			throws Exception {
+		sb.append(arg).append("ErrorStatement").append('\n');
+		return null;
+	}
+
 }